@@ -0,0 +1,240 @@
+package app;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Generates many projects in one JVM. Jobs share a single {@link GenerationService}, so parsed
+ * models, compositions and rendered fragments are reused across projects.
+ *
+ * <p>A batch spec is either a jobs file, a directory of pattern XMLs or a glob such as
+ * {@code node_Structure/P*.xml}. Jobs files hold one project per line:
+ * <pre>
+ *   # comment
+ *   ComboProj | PSend.xml, PPacket.xml
+ *   PReceive.xml                      (project name defaults to PReceiveProj)
+ * </pre>
+ * The project name is separated by {@code |}, which cannot occur in a Windows path, so drive
+ * letters such as {@code C:\patterns\PSend.xml} are read as paths. Relative pattern paths are
+ * resolved against the jobs file's directory. Directories and globs match top-level files only.
+ */
+public class BatchGenerator {
+
+  public record Job(String projectName, List<Path> patternXmls) {}
+
+  /** Outcome of one job; {@code failure} is null on success. */
+  public record Result(Job job, long nanos, boolean generated, Exception failure) {}
+
+  private final GenerationService service;
+  private final int parallelism;
+  private final boolean incremental;
+  private final boolean pipelined;
+
+  public BatchGenerator(GenerationService service, int parallelism, boolean incremental) {
+    this(service, parallelism, incremental, false);
+  }
+
+  /** With {@code pipelined}, jobs flow through a {@link GenerationPipeline} instead of a job pool. */
+  public BatchGenerator(GenerationService service, int parallelism, boolean incremental, boolean pipelined) {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("Batch parallelism must be positive: " + parallelism);
+    }
+    this.service = service;
+    this.parallelism = parallelism;
+    this.incremental = incremental;
+    this.pipelined = pipelined;
+  }
+
+  /** Resolves a jobs file, pattern directory or glob into jobs, in a stable order. */
+  public static List<Job> load(String spec) throws IOException {
+    Path path = Paths.get(spec);
+    if (Files.isDirectory(path)) {
+      return jobsFor(matching(path, "glob:*.xml"));
+    }
+    if (Files.isRegularFile(path)) {
+      return readJobs(path);
+    }
+    int wildcard = indexOfWildcard(spec);
+    if (wildcard < 0) {
+      throw new IllegalArgumentException("Batch spec is not a file, directory or glob: " + spec);
+    }
+    int slash = spec.lastIndexOf('/', wildcard);
+    Path base = slash < 0 ? Paths.get("") : Paths.get(spec.substring(0, slash + 1));
+    return jobsFor(matching(base, "glob:" + spec.substring(slash + 1)));
+  }
+
+  public List<Result> run(List<Job> jobs) throws InterruptedException {
+    Set<String> names = new HashSet<>();
+    for (Job job : jobs) {
+      if (!names.add(job.projectName())) {
+        throw new IllegalArgumentException("Duplicate project in batch: " + job.projectName());
+      }
+    }
+    if (pipelined) {
+      return runPipelined(jobs);
+    }
+    // Separate from the service's parse pool: jobs block on parse futures and must not starve it.
+    AtomicInteger counter = new AtomicInteger();
+    ExecutorService pool = Executors.newFixedThreadPool(Math.min(parallelism, Math.max(1, jobs.size())), r -> {
+      Thread t = new Thread(r, "batch-job-" + counter.incrementAndGet());
+      t.setDaemon(true);
+      return t;
+    });
+    try {
+      List<Future<Result>> futures = new ArrayList<>(jobs.size());
+      for (Job job : jobs) {
+        futures.add(pool.submit(() -> runJob(job)));
+      }
+      List<Result> results = new ArrayList<>(jobs.size());
+      for (Future<Result> future : futures) {
+        try {
+          results.add(future.get());
+        } catch (ExecutionException e) {
+          // runJob reports exceptions in its Result; only errors should get here.
+          if (e.getCause() instanceof Error error) throw error;
+          throw new IllegalStateException("Batch job failed", e.getCause());
+        }
+      }
+      return results;
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  private List<Result> runPipelined(List<Job> jobs) throws InterruptedException {
+    List<CompletableFuture<Result>> futures = new ArrayList<>(jobs.size());
+    try (GenerationPipeline pipeline = new GenerationPipeline(
+        service, GenerationPipeline.Settings.forParallelism(parallelism), incremental)) {
+      for (Job job : jobs) {
+        long start = System.nanoTime();
+        futures.add(pipeline.submit(job.patternXmls(), job.projectName()).handle((generated, failure) -> {
+          if (failure instanceof Error error) throw error;
+          return new Result(job, System.nanoTime() - start, failure == null && generated, (Exception) failure);
+        }));
+      }
+    }
+    List<Result> results = new ArrayList<>(jobs.size());
+    for (CompletableFuture<Result> future : futures) {
+      results.add(future.join());
+    }
+    return results;
+  }
+
+  private Result runJob(Job job) {
+    long start = System.nanoTime();
+    try {
+      boolean generated = true;
+      if (incremental) {
+        generated = service.generateIncremental(job.patternXmls(), job.projectName(), ReqSpec.empty());
+      } else {
+        service.generate(job.patternXmls(), job.projectName(), ReqSpec.empty());
+      }
+      return new Result(job, System.nanoTime() - start, generated, null);
+    } catch (Exception e) {
+      return new Result(job, System.nanoTime() - start, false, e);
+    }
+  }
+
+  /** Prints one line per job followed by totals. */
+  public static void printSummary(List<Result> results, long wallNanos, PrintStream out) {
+    int generated = 0;
+    int upToDate = 0;
+    int failed = 0;
+    for (Result result : results) {
+      String status;
+      if (result.failure() != null) {
+        status = "FAILED  " + result.failure().getMessage();
+        failed++;
+      } else if (result.generated()) {
+        status = "generated";
+        generated++;
+      } else {
+        status = "up to date";
+        upToDate++;
+      }
+      out.println(String.format(Locale.ROOT, "  %-30s %9.1f ms  %s",
+          result.job().projectName(), result.nanos() / 1e6, status));
+    }
+    out.println(String.format(Locale.ROOT, "Batch: %d jobs, %d generated, %d up to date, %d failed in %.1f ms",
+        results.size(), generated, upToDate, failed, wallNanos / 1e6));
+  }
+
+  private static List<Job> readJobs(Path jobsFile) throws IOException {
+    Path base = jobsFile.toAbsolutePath().getParent();
+    List<Job> jobs = new ArrayList<>();
+    int lineNo = 0;
+    for (String raw : Files.readAllLines(jobsFile, StandardCharsets.UTF_8)) {
+      lineNo++;
+      String line = raw.strip();
+      if (line.isEmpty() || line.startsWith("#")) continue;
+      String name = null;
+      int bar = line.indexOf('|');
+      if (bar >= 0) {
+        name = line.substring(0, bar).strip();
+        line = line.substring(bar + 1);
+      }
+      List<Path> xmls = new ArrayList<>();
+      for (String part : line.split(",")) {
+        String trimmed = part.strip();
+        if (!trimmed.isEmpty()) xmls.add(base.resolve(trimmed));
+      }
+      if (xmls.isEmpty() || (name != null && name.isEmpty())) {
+        throw new IllegalArgumentException(jobsFile + ":" + lineNo + ": expected '[Project |] a.xml[, b.xml...]'");
+      }
+      jobs.add(new Job(name != null ? name : defaultProjectName(xmls.get(0)), List.copyOf(xmls)));
+    }
+    return jobs;
+  }
+
+  private static List<Path> matching(Path dir, String pattern) throws IOException {
+    PathMatcher matcher = FileSystems.getDefault().getPathMatcher(pattern);
+    Path root = dir.toString().isEmpty() ? Paths.get(".") : dir;
+    try (Stream<Path> stream = Files.list(root)) {
+      return stream.filter(Files::isRegularFile)
+          .filter(p -> matcher.matches(p.getFileName()))
+          .sorted()
+          .toList();
+    }
+  }
+
+  private static List<Job> jobsFor(List<Path> xmls) {
+    List<Job> jobs = new ArrayList<>(xmls.size());
+    for (Path xml : xmls) {
+      jobs.add(new Job(defaultProjectName(xml), List.of(xml)));
+    }
+    return jobs;
+  }
+
+  /** Same naming as the Makefile: {@code node_Structure/PSend.xml} becomes {@code PSendProj}. */
+  private static String defaultProjectName(Path xml) {
+    String file = xml.getFileName().toString();
+    int dot = file.lastIndexOf('.');
+    return (dot > 0 ? file.substring(0, dot) : file) + "Proj";
+  }
+
+  private static int indexOfWildcard(String spec) {
+    for (int i = 0; i < spec.length(); i++) {
+      char c = spec.charAt(i);
+      if (c == '*' || c == '?' || c == '[' || c == '{') return i;
+    }
+    return -1;
+  }
+}
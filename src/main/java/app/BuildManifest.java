@@ -0,0 +1,100 @@
+package app;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Record of one generated project, stored as {@value #FILE_NAME} in the project directory:
+ * generator format, combination-rule fingerprint, input pattern hashes (in order) and the hashes
+ * of the files written. Used by incremental generation to skip work when nothing changed.
+ */
+public record BuildManifest(int format, String rules, List<String> inputs, Map<String, String> outputs) {
+
+  public static final String FILE_NAME = ".eventb-manifest";
+
+  /** Bump when parsing, composition or rendering changes in a way that alters output. */
+  public static final int FORMAT = 1;
+
+  /** Entry describing one input: content hash and normalised path. */
+  public static String input(String hash, Path path) {
+    return hash + " " + path.toAbsolutePath().normalize().toString().replace('\\', '/');
+  }
+
+  /** True when format, rules and inputs match and every recorded output is still intact. */
+  public boolean upToDate(BuildManifest current, Path projectDir) throws IOException {
+    if (format != current.format() || !rules.equals(current.rules()) || !inputs.equals(current.inputs())) {
+      return false;
+    }
+    if (outputs.isEmpty()) return false;
+    for (Map.Entry<String, String> output : outputs.entrySet()) {
+      Path file = projectDir.resolve(output.getKey());
+      if (!Files.isRegularFile(file) || !output.getValue().equals(hash(file))) return false;
+    }
+    return true;
+  }
+
+  public BuildManifest withOutputs(Path projectDir, List<Path> files) throws IOException {
+    Map<String, String> hashes = new LinkedHashMap<>();
+    for (Path file : files) {
+      hashes.put(projectDir.relativize(file).toString().replace('\\', '/'), hash(file));
+    }
+    return new BuildManifest(format, rules, inputs, hashes);
+  }
+
+  /** Reads the manifest in {@code projectDir}, or null when it is missing or malformed. */
+  public static BuildManifest read(Path projectDir) throws IOException {
+    Path file = projectDir.resolve(FILE_NAME);
+    if (!Files.isRegularFile(file)) return null;
+    int format = -1;
+    String rules = null;
+    List<String> inputs = new ArrayList<>();
+    Map<String, String> outputs = new LinkedHashMap<>();
+    for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+      int eq = line.indexOf('=');
+      if (eq <= 0) continue;
+      String key = line.substring(0, eq);
+      String value = line.substring(eq + 1);
+      if (key.equals("format")) {
+        try {
+          format = Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+          return null;
+        }
+      } else if (key.equals("rules")) {
+        rules = value;
+      } else if (key.equals("input")) {
+        inputs.add(value);
+      } else if (key.startsWith("output.")) {
+        outputs.put(key.substring("output.".length()), value);
+      }
+    }
+    return rules == null ? null : new BuildManifest(format, rules, inputs, outputs);
+  }
+
+  public void write(Path projectDir) throws IOException {
+    StringBuilder sb = new StringBuilder();
+    sb.append("format=").append(format).append('\n');
+    sb.append("rules=").append(rules).append('\n');
+    for (String input : inputs) sb.append("input=").append(input).append('\n');
+    for (Map.Entry<String, String> output : outputs.entrySet()) {
+      sb.append("output.").append(output.getKey()).append('=').append(output.getValue()).append('\n');
+    }
+    Path target = projectDir.resolve(FILE_NAME);
+    Path tmp = projectDir.resolve(FILE_NAME + ".tmp");
+    Files.writeString(tmp, sb, StandardCharsets.UTF_8);
+    try {
+      Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (AtomicMoveNotSupportedException e) {
+      Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  private static String hash(Path file) throws IOException {
+    return Hashes.sha256Hex(file);
+  }
+}
@@ -0,0 +1,122 @@
+package app;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded LRU cache of composed models keyed by the ordered content fingerprints of their input
+ * patterns. A request whose leading patterns were composed before resumes from that prefix's
+ * {@link PatternComposer.Accumulator}, so only the newly added patterns are merged; rule
+ * application and event de-duplication still run over the whole composite.
+ */
+public class CompositionCache {
+
+  public static final int DEFAULT_CAPACITY = 64;
+
+  /** Loads the input models from position {@code fromIndex} onwards, in order. */
+  @FunctionalInterface
+  public interface ModelSource {
+    List<PatternModel> load(int fromIndex) throws Exception;
+  }
+
+  private final PatternComposer composer;
+  private final Map<List<String>, Entry> entries;
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong prefixHits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+
+  public CompositionCache(PatternComposer composer) {
+    this(composer, DEFAULT_CAPACITY);
+  }
+
+  public CompositionCache(PatternComposer composer, int capacity) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("Cache capacity must be positive: " + capacity);
+    }
+    this.composer = composer;
+    this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<List<String>, Entry> eldest) {
+        return size() > capacity;
+      }
+    };
+  }
+
+  public PatternModel compose(List<String> fingerprints, ModelSource source) throws Exception {
+    List<String> key = List.copyOf(fingerprints);
+
+    PatternComposer.Accumulator acc = null;
+    int from = 0;
+    synchronized (this) {
+      Entry exact = entries.get(key);
+      if (exact != null && exact.result() != null) {
+        hits.incrementAndGet();
+        return exact.result().copy();
+      }
+      for (int n = key.size() - 1; n >= 1 && acc == null; n--) {
+        Entry prefix = entries.get(key.subList(0, n));
+        if (prefix != null) {
+          acc = prefix.accumulator().copy();
+          from = n;
+        }
+      }
+    }
+
+    if (acc == null) {
+      misses.incrementAndGet();
+      acc = new PatternComposer.Accumulator();
+    } else {
+      prefixHits.incrementAndGet();
+    }
+    for (PatternModel model : source.load(from)) {
+      acc.add(model);
+    }
+    PatternModel result = composer.finish(acc);
+    synchronized (this) {
+      entries.put(key, new Entry(acc, result.copy()));
+    }
+    return result;
+  }
+
+  /**
+   * Records a single pattern that was used on its own, so that later selections starting with it
+   * resume from its accumulator. Single-pattern requests are answered with the parsed model and
+   * never composed, so the seeded entry holds no result.
+   */
+  public void seed(String fingerprint, PatternModel model) {
+    List<String> key = List.of(fingerprint);
+    synchronized (this) {
+      if (entries.get(key) != null) return;
+    }
+    PatternComposer.Accumulator acc = new PatternComposer.Accumulator();
+    acc.add(model.copy());
+    synchronized (this) {
+      entries.putIfAbsent(key, new Entry(acc, null));
+    }
+  }
+
+  public long hits() {
+    return hits.get();
+  }
+
+  public long prefixHits() {
+    return prefixHits.get();
+  }
+
+  public long misses() {
+    return misses.get();
+  }
+
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  public synchronized void clear() {
+    entries.clear();
+  }
+
+  /** {@code result} is null for entries added by {@link #seed}, which only serve as prefixes. */
+  private record Entry(PatternComposer.Accumulator accumulator, PatternModel result) {}
+}
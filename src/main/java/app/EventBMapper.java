@@ -1,68 +1,140 @@
 package app;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Renders a PatternModel as Event-B context and machine text. The {@code render*} methods write
+ * straight to an {@link Appendable}, so callers can stream to a file or channel instead of
+ * holding the text in memory; {@link #toEventB} collects the same output into Strings.
+ *
+ * <p>Event blocks only depend on the event's own content (their guard/action labels are local),
+ * so rendered blocks are cached by structural hash and reused across calls; invariant and axiom
+ * labels are numbered during assembly.
+ */
 public class EventBMapper {
+
+  public static final int DEFAULT_FRAGMENT_CAPACITY = 4096;
+
+  /** Component names derived from a model and refinement index. */
+  public record Names(String baseName, int refinement, String ctxName, String machName) {}
+
+  private final Map<Integer, Fragment> fragments;
+  private final AtomicLong fragmentHits = new AtomicLong();
+  private final AtomicLong fragmentMisses = new AtomicLong();
+
+  public EventBMapper() {
+    this(DEFAULT_FRAGMENT_CAPACITY);
+  }
+
+  /** @param fragmentCapacity maximum number of cached event blocks; 0 disables the cache */
+  public EventBMapper(int fragmentCapacity) {
+    this.fragments = fragmentCapacity <= 0 ? null : new LinkedHashMap<>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Integer, Fragment> eldest) {
+        return size() > fragmentCapacity;
+      }
+    };
+  }
+
+  public long fragmentHits() {
+    return fragmentHits.get();
+  }
+
+  public long fragmentMisses() {
+    return fragmentMisses.get();
+  }
+
   public EventBIR toEventB(PatternModel m, int refinement) {
+    long start = System.nanoTime();
+    try {
+      return render(m, refinement);
+    } finally {
+      Metrics.MAP.recordSince(start);
+    }
+  }
+
+  private EventBIR render(PatternModel m, int refinement) {
+    Names names = names(m, refinement);
+    StringBuilder ctxSb = new StringBuilder();
+    StringBuilder sb = new StringBuilder();
+    try {
+      renderContext(m, names, ctxSb);
+      renderMachine(m, names, sb);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e); // StringBuilder does not throw
+    }
+    return new EventBIR(names.baseName(), names.refinement(), names.ctxName(), names.machName(),
+        ctxSb.toString(), sb.toString());
+  }
+
+  public Names names(PatternModel m, int refinement) {
     String baseName = (m.name != null && !m.name.isBlank()) ? m.name.trim() : "Pattern";
     int refIndex = Math.max(refinement, 0);
     boolean includesPSensing = includesPattern(m, "PSensingUnit");
     String ctxName = includesPSensing ? "Refine_Machine_C" + refIndex : baseName + "_C" + refIndex;
     String machName = includesPSensing ? "Refine_Machine_M" + refIndex : baseName + "_M" + refIndex;
+    return new Names(baseName, refIndex, ctxName, machName);
+  }
 
-    StringBuilder ctxSb = new StringBuilder();
-    ctxSb.append("context ").append(ctxName).append("\n");
+  public void renderContext(PatternModel m, Names names, Appendable out) throws IOException {
+    out.append("context ").append(names.ctxName()).append('\n');
 
     // Sets
     if (m.context != null && m.context.sets != null && !m.context.sets.isEmpty()) {
-      ctxSb.append("sets\n");
+      out.append("sets\n");
       for (String s : m.context.sets) {
-        ctxSb.append("  ").append(s).append("\n");
+        out.append("  ").append(s).append('\n');
       }
-      ctxSb.append("\n");
+      out.append('\n');
     }
 
     // Constants
     if (m.context != null && m.context.constants != null && !m.context.constants.isEmpty()) {
-      ctxSb.append("constants\n");
+      out.append("constants\n");
       for (String c : m.context.constants) {
-        ctxSb.append("  ").append(c).append("\n");
+        out.append("  ").append(c).append('\n');
       }
-      ctxSb.append("\n");
+      out.append('\n');
     }
 
     // Axioms
     if (m.context != null && m.context.axioms != null && !m.context.axioms.isEmpty()) {
-      ctxSb.append("axioms\n");
+      out.append("axioms\n");
       int ax = 0;
       for (String axiom : m.context.axioms) {
-        ctxSb.append(String.format("  @ax%02d %s\n", ++ax, axiom));
+        line(out, "  @ax", ++ax, axiom);
       }
-      ctxSb.append("\n");
+      out.append('\n');
     }
 
-    ctxSb.append("end\n");
+    out.append("end\n");
+  }
 
-    StringBuilder sb = new StringBuilder();
-    sb.append("machine ").append(machName).append("\n")
-      .append("sees ").append(ctxName).append("\n\n");
+  public void renderMachine(PatternModel m, Names names, Appendable out) throws IOException {
+    out.append("machine ").append(names.machName()).append('\n')
+      .append("sees ").append(names.ctxName()).append("\n\n");
 
     // Variables
     if (!m.variables.isEmpty()) {
-      sb.append("variables\n");
-      for (var v : m.variables) sb.append("  ").append(v.name).append("\n");
-      sb.append("\n");
+      out.append("variables\n");
+      for (var v : m.variables) out.append("  ").append(v.name).append('\n');
+      out.append('\n');
     }
 
     // Invariants
     if (!m.invariants.isEmpty()) {
-      sb.append("invariants\n");
+      out.append("invariants\n");
       int i = 0;
-      for (var inv : m.invariants)
-        sb.append(String.format("  @inv%02d %s\n", ++i, inv.expression));
-      sb.append("\n");
+      for (var inv : m.invariants) line(out, "  @inv", ++i, inv.expression);
+      out.append('\n');
     }
 
     // Events
-    sb.append("events\n");
+    out.append("events\n");
 
     PatternModel.Event initEvent = null;
     for (var e : m.events) {
@@ -73,95 +145,134 @@ public class EventBMapper {
     }
 
     if (initEvent != null) {
-      sb.append("  event INITIALISATION\n");
-      sb.append("    then\n");
+      out.append("  event INITIALISATION\n");
+      out.append("    then\n");
       int a = 0;
-      for (var ac : initEvent.actions)
-        sb.append(String.format("      @int%02d %s\n", ++a, ac.assignment));
-      if (a == 0) sb.append("      @int01 skip\n");
-      sb.append("  end\n\n");
+      for (var ac : initEvent.actions) line(out, "      @int", ++a, ac.assignment);
+      if (a == 0) out.append("      @int01 skip\n");
+      out.append("  end\n\n");
     } else {
-      sb.append("  event INITIALISATION\n    then\n      @int01 skip\n  end\n\n");
+      out.append("  event INITIALISATION\n    then\n      @int01 skip\n  end\n\n");
     }
 
     for (var e : m.events) {
       if (initEvent != null && e == initEvent) continue;
-      sb.append("  event ").append(e.name).append("\n");
-      if (!e.params.isEmpty()) {
-        sb.append("    any ");
-        for (int i = 0; i < e.params.size(); i++) {
-          if (i > 0) sb.append(" ");
-          sb.append(e.params.get(i).name);
-        }
-        sb.append("\n");
+      renderEvent(e, out);
+    }
+
+    out.append("end\n");
+  }
+
+  private void renderEvent(PatternModel.Event e, Appendable out) throws IOException {
+    if (fragments == null) {
+      renderEventBlock(e, out);
+      return;
+    }
+    int hash = e.structuralHash();
+    Fragment cached;
+    synchronized (fragments) {
+      cached = fragments.get(hash);
+    }
+    if (cached != null && cached.event().contentEquals(e)) {
+      fragmentHits.incrementAndGet();
+      out.append(cached.text());
+      return;
+    }
+    fragmentMisses.incrementAndGet();
+    StringBuilder block = new StringBuilder();
+    renderEventBlock(e, block);
+    String text = block.toString();
+    synchronized (fragments) {
+      fragments.put(hash, new Fragment(e.copy(), text));
+    }
+    out.append(text);
+  }
+
+  private void renderEventBlock(PatternModel.Event e, Appendable out) throws IOException {
+    out.append("  event ").append(e.name).append('\n');
+    if (!e.params.isEmpty()) {
+      out.append("    any ");
+      for (int i = 0; i < e.params.size(); i++) {
+        if (i > 0) out.append(' ');
+        out.append(e.params.get(i).name);
       }
+      out.append('\n');
+    }
 
+    boolean hasGuards = !e.guards.isEmpty();
+    for (int i = 0; i < e.params.size() && !hasGuards; i++) {
+      hasGuards = needsTypeGuard(e, e.params.get(i));
+    }
+    if (hasGuards) {
+      out.append("    where\n");
       int g = 0;
-      StringBuilder guardSb = new StringBuilder();
       for (var p : e.params) {
-        if (p.type != null && !p.type.isBlank() && !hasExplicitTypeGuard(e.guards, p.name, p.type)) {
-          guardSb.append(String.format("      @g%02d %s ∈ %s\n", ++g, p.name, p.type));
+        if (needsTypeGuard(e, p)) {
+          label(out, "      @g", ++g).append(' ').append(p.name).append(" ∈ ").append(p.type).append('\n');
         }
       }
-      for (var gu : e.guards) {
-        guardSb.append(String.format("      @g%02d %s\n", ++g, gu.expr));
-      }
+      for (var gu : e.guards) line(out, "      @g", ++g, gu.expr);
+    }
 
-      if (guardSb.length() > 0) {
-        sb.append("    where\n");
-        sb.append(guardSb);
-      }
+    if (e.actions.isEmpty()) {
+      out.append("  end\n\n");
+      return;
+    }
 
-      if (e.actions.isEmpty()) {
-        sb.append("  end\n\n");
-        continue;
-      }
+    out.append("    then\n");
+    int a = 0;
+    for (var ac : e.actions) line(out, "      @a", ++a, ac.assignment);
+    out.append("  end\n\n");
+  }
 
-      sb.append("    then\n");
-      int a = 0;
-      for (var ac : e.actions)
-        sb.append(String.format("      @a%02d %s\n", ++a, ac.assignment));
-      sb.append("  end\n\n");
-    }
+  private static boolean needsTypeGuard(PatternModel.Event e, PatternModel.Param p) {
+    return p.type != null && !p.type.isBlank() && !hasExplicitTypeGuard(e, p.name, p.type);
+  }
 
-    sb.append("end\n");
-    return new EventBIR(baseName, refIndex, ctxName, machName, ctxSb.toString(), sb.toString());
+  /** Appends {@code prefix}, {@code n} zero-padded to two digits (as {@code %02d}), a space, text and newline. */
+  private static void line(Appendable out, String prefix, int n, String text) throws IOException {
+    label(out, prefix, n).append(' ').append(text).append('\n');
   }
 
-  private static boolean hasExplicitTypeGuard(java.util.List<PatternModel.Guard> guards, String param, String type) {
-    if (guards == null || guards.isEmpty()) return false;
-    String needle = (param + " ∈ " + type).replaceAll("\\s+", "");
-    for (var g : guards) {
-      if (g.expr == null) continue;
-      String normalized = g.expr.replaceAll("\\s+", "");
-      if (normalized.equals(needle)) return true;
-    }
-    return false;
+  private static Appendable label(Appendable out, String prefix, int n) throws IOException {
+    out.append(prefix);
+    if (n < 10) out.append('0');
+    return out.append(Integer.toString(n));
+  }
+
+  private static boolean hasExplicitTypeGuard(PatternModel.Event event, String param, String type) {
+    if (event.guards.isEmpty()) return false;
+    String needle = EventBTokens.stripWhitespace(param) + "∈" + EventBTokens.stripWhitespace(type);
+    return event.normalizedGuards().contains(needle);
   }
 
   private static boolean includesPattern(PatternModel model, String targetPatternName) {
     if (model == null || targetPatternName == null) return false;
-    String target = targetPatternName.replaceAll("\\s+", "");
+    String target = EventBTokens.stripWhitespace(targetPatternName);
     if (target.isEmpty()) return false;
 
-    if (model.name != null) {
-      String normalizedModelName = model.name.replaceAll("\\s+", "");
-      if (normalizedModelName.equalsIgnoreCase(target)) {
-        return true;
-      }
+    if (model.name != null && EventBTokens.stripWhitespace(model.name).equalsIgnoreCase(target)) {
+      return true;
     }
 
     for (PatternModel.Event event : model.events) {
       if (event == null || event.sourcePattern == null) continue;
-      String[] parts = event.sourcePattern.split("\\+");
-      for (String part : parts) {
-        String normalizedPart = part.replaceAll("\\s+", "");
-        if (normalizedPart.equalsIgnoreCase(target)) {
+      String source = event.sourcePattern;
+      int start = 0;
+      while (true) {
+        int plus = source.indexOf('+', start);
+        String part = plus < 0 ? source.substring(start) : source.substring(start, plus);
+        if (EventBTokens.stripWhitespace(part).equalsIgnoreCase(target)) {
           return true;
         }
+        if (plus < 0) break;
+        start = plus + 1;
       }
     }
 
     return false;
   }
+
+  /** A rendered event block together with a private copy of the event it was rendered from. */
+  private record Fragment(PatternModel.Event event, String text) {}
 }
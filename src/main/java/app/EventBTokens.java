@@ -0,0 +1,70 @@
+package app;
+
+import java.util.Collection;
+
+/**
+ * Allocation-light scanning helpers for Event-B guard, action and type expressions, used in place
+ * of per-call regular expressions.
+ */
+public final class EventBTokens {
+
+  private EventBTokens() {}
+
+  /**
+   * Adds every identifier in {@code expr} to {@code out}. Identifiers are maximal runs of letters,
+   * digits and underscores (Unicode letters included); Event-B's letter-like operators
+   * (ℕ, ℤ, ℙ, λ) and all other symbols, including the prime of {@code x'}, separate tokens.
+   */
+  public static void identifiers(String expr, Collection<String> out) {
+    if (expr == null) return;
+    int start = -1;
+    int len = expr.length();
+    for (int i = 0; i < len; i++) {
+      if (isIdentifierChar(expr.charAt(i))) {
+        if (start < 0) start = i;
+      } else if (start >= 0) {
+        out.add(expr.substring(start, i));
+        start = -1;
+      }
+    }
+    if (start >= 0) out.add(start == 0 ? expr : expr.substring(start));
+  }
+
+  /**
+   * Removes ASCII whitespace ({@code \s}: space, tab, newline, vertical tab, form feed, carriage
+   * return); equivalent to {@code replaceAll("\\s+", "")} and returns {@code s} itself when it
+   * contains none.
+   */
+  public static String stripWhitespace(String s) {
+    if (s == null) return null;
+    int len = s.length();
+    int i = 0;
+    while (i < len && !isWhitespace(s.charAt(i))) i++;
+    if (i == len) return s;
+    StringBuilder sb = new StringBuilder(len);
+    sb.append(s, 0, i);
+    for (; i < len; i++) {
+      char c = s.charAt(i);
+      if (!isWhitespace(c)) sb.append(c);
+    }
+    return sb.toString();
+  }
+
+  public static boolean isIdentifierChar(char c) {
+    if (c < 0x80) {
+      return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+    }
+    switch (c) {
+      case 'ℕ', 'ℤ', 'ℙ', 'λ' -> {
+        return false;
+      }
+      default -> {
+        return Character.isLetterOrDigit(c);
+      }
+    }
+  }
+
+  private static boolean isWhitespace(char c) {
+    return c == ' ' || c == '\t' || c == '\n' || c == 0x0B || c == '\f' || c == '\r';
+  }
+}
@@ -1,15 +1,195 @@
 package app;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Writes .ctx/.bcm files. Output whose SHA-256 matches the file already on disk is skipped;
+ * changed output goes to a temp file in the same directory and is atomically renamed into place,
+ * so readers never observe a partially written file.
+ */
 public class EventBWriter {
+
+  private static final int MAX_TRACKED_FILES = 4096;
+
+  /** Hashes of files this writer produced or inspected, valid while their mtime/size hold. */
+  private final Map<Path, FileStamp> known = new LinkedHashMap<>(16, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<Path, FileStamp> eldest) {
+      return size() > MAX_TRACKED_FILES;
+    }
+  };
+  private final AtomicLong filesWritten = new AtomicLong();
+  private final AtomicLong filesSkipped = new AtomicLong();
+
   public void write(Path project, EventBIR ir) throws IOException {
-    Files.createDirectories(project);
-    Path refinementDir = project.resolve("machine" + ir.refinement());
-    Files.createDirectories(refinementDir);
-    Files.writeString(refinementDir.resolve(ir.ctxName() + ".ctx"), ir.ctxText(), StandardCharsets.UTF_8);
-    Files.writeString(refinementDir.resolve(ir.machName() + ".bcm"), ir.machineText(), StandardCharsets.UTF_8);
+    long start = System.nanoTime();
+    try {
+      Files.createDirectories(project);
+      Path refinementDir = project.resolve("machine" + ir.refinement());
+      Files.createDirectories(refinementDir);
+      writeIfChanged(refinementDir.resolve(ir.ctxName() + ".ctx"), ir.ctxText());
+      writeIfChanged(refinementDir.resolve(ir.machName() + ".bcm"), ir.machineText());
+    } finally {
+      Metrics.WRITE.recordSince(start);
+    }
+  }
+
+  /**
+   * Renders {@code model} with {@code mapper} directly into the .ctx/.bcm file channels, without
+   * materialising the text. Produces the same files as {@code write(project, mapper.toEventB(...))}.
+   */
+  public EventBMapper.Names write(Path project, EventBMapper mapper, PatternModel model, int refinement)
+      throws IOException {
+    long start = System.nanoTime();
+    try {
+      EventBMapper.Names names = mapper.names(model, refinement);
+      Path refinementDir = project.resolve("machine" + names.refinement());
+      Files.createDirectories(refinementDir);
+      streamIfChanged(refinementDir.resolve(names.ctxName() + ".ctx"),
+          out -> mapper.renderContext(model, names, out));
+      streamIfChanged(refinementDir.resolve(names.machName() + ".bcm"),
+          out -> mapper.renderMachine(model, names, out));
+      return names;
+    } finally {
+      Metrics.WRITE.recordSince(start);
+    }
+  }
+
+  public long filesWritten() {
+    return filesWritten.get();
+  }
+
+  public long filesSkipped() {
+    return filesSkipped.get();
+  }
+
+  private void writeIfChanged(Path file, String text) throws IOException {
+    byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+    String hash = Hashes.sha256Hex(bytes);
+    if (unchanged(file, hash, bytes.length)) {
+      filesSkipped.incrementAndGet();
+      return;
+    }
+    Path tmp = tempFor(file);
+    try {
+      Files.write(tmp, bytes, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+      replace(tmp, file, hash);
+    } finally {
+      Files.deleteIfExists(tmp);
+    }
+  }
+
+  /**
+   * Renders once into a digest-only sink and compares that with the file on disk; only changed
+   * output is rendered a second time, into a temp file that replaces the original.
+   */
+  private void streamIfChanged(Path file, Renderer renderer) throws IOException {
+    DigestSink sink = new DigestSink();
+    render(renderer, sink);
+    String hash = Hashes.hex(sink.digest.digest());
+    if (unchanged(file, hash, sink.size)) {
+      filesSkipped.incrementAndGet();
+      return;
+    }
+    Path tmp = tempFor(file);
+    try {
+      render(renderer, Channels.newOutputStream(
+          FileChannel.open(tmp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)));
+      replace(tmp, file, hash);
+    } finally {
+      Files.deleteIfExists(tmp);
+    }
+  }
+
+  private static void render(Renderer renderer, OutputStream target) throws IOException {
+    try (Writer out = new BufferedWriter(new OutputStreamWriter(target, StandardCharsets.UTF_8))) {
+      renderer.render(out);
+    }
   }
+
+  private boolean unchanged(Path file, String hash, long size) throws IOException {
+    BasicFileAttributes attrs;
+    try {
+      attrs = Files.readAttributes(file, BasicFileAttributes.class);
+    } catch (NoSuchFileException e) {
+      return false;
+    }
+    if (!attrs.isRegularFile() || attrs.size() != size) return false;
+
+    long modified = attrs.lastModifiedTime().toMillis();
+    FileStamp stamp;
+    synchronized (known) {
+      stamp = known.get(file);
+    }
+    String existing;
+    if (stamp != null && stamp.modified() == modified && stamp.size() == size) {
+      existing = stamp.hash();
+    } else {
+      existing = Hashes.sha256Hex(file);
+      remember(file, new FileStamp(modified, size, existing));
+    }
+    return existing.equals(hash);
+  }
+
+  private void replace(Path tmp, Path file, String hash) throws IOException {
+    try {
+      Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (AtomicMoveNotSupportedException e) {
+      Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+    filesWritten.incrementAndGet();
+    BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+    remember(file, new FileStamp(attrs.lastModifiedTime().toMillis(), attrs.size(), hash));
+  }
+
+  private void remember(Path file, FileStamp stamp) {
+    synchronized (known) {
+      known.put(file, stamp);
+    }
+  }
+
+  /** Unique, not yet created sibling of {@code file}; created with default permissions. */
+  private static Path tempFor(Path file) {
+    String suffix = Long.toHexString(ThreadLocalRandom.current().nextLong());
+    return file.resolveSibling("." + file.getFileName() + "." + suffix + ".tmp");
+  }
+
+  @FunctionalInterface
+  private interface Renderer {
+    void render(Appendable out) throws IOException;
+  }
+
+  /** Discards rendered bytes, keeping only their SHA-256 and count. */
+  private static final class DigestSink extends OutputStream {
+    final MessageDigest digest = Hashes.sha256();
+    long size;
+
+    @Override
+    public void write(int b) {
+      digest.update((byte) b);
+      size++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+      digest.update(b, off, len);
+      size += len;
+    }
+  }
+
+  private record FileStamp(long modified, long size, String hash) {}
 }
@@ -0,0 +1,280 @@
+package app;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Asynchronous generation jobs for the web API. Each job composes its refinements concurrently
+ * and records progress events per refinement and stage (parse, compose, map, write) that clients
+ * can follow while it runs. Jobs live in a bounded in-memory store; finished jobs expire after
+ * a time-to-live, or earlier when room is needed for new ones.
+ */
+public class GenerationJobs {
+
+  public static final int DEFAULT_CAPACITY = 256;
+  public static final long DEFAULT_TTL_MILLIS = TimeUnit.MINUTES.toMillis(15);
+
+  public enum State { QUEUED, RUNNING, SUCCEEDED, FAILED }
+
+  /** One progress event; {@code data} is a JSON object. Ids increase from 1 within a job. */
+  public record Event(long id, String type, String data) {}
+
+  private final GenerationService service;
+  private final ExecutorService refinementPool;
+  private final Semaphore generationPermits;
+  private final ThreadPoolExecutor runner;
+  private final boolean persistArtifacts;
+  private final int capacity;
+  private final long ttlMillis;
+  private final Map<String, Job> jobs = new LinkedHashMap<>();
+
+  /**
+   * @param workers jobs running at once; up to {@code 4 * workers} more wait in a queue
+   * @param refinementPool executor for the refinements of a running job
+   * @param generationPermits shared with synchronous generation; a job holds one while it runs
+   */
+  public GenerationJobs(GenerationService service, ExecutorService refinementPool, Semaphore generationPermits,
+                        int workers, boolean persistArtifacts, int capacity, long ttlMillis) {
+    if (workers < 1 || capacity < 1 || ttlMillis < 0) {
+      throw new IllegalArgumentException("Job workers and capacity must be positive");
+    }
+    this.service = service;
+    this.refinementPool = refinementPool;
+    this.generationPermits = generationPermits;
+    this.runner = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(4 * workers), GenerationService.daemonThreads("generation-job"));
+    this.persistArtifacts = persistArtifacts;
+    this.capacity = capacity;
+    this.ttlMillis = ttlMillis;
+  }
+
+  /**
+   * Queues a job. Throws {@link RejectedExecutionException} when the store is full of unfinished
+   * jobs or the run queue is full.
+   */
+  public Job submit(String projectName, List<List<Path>> refinementPaths) {
+    Job job;
+    synchronized (jobs) {
+      expire();
+      if (jobs.size() >= capacity && !evictOldestFinished()) {
+        throw new RejectedExecutionException("Job store is full");
+      }
+      // Random UUIDs come from a SecureRandom: ids cannot be guessed from ones handed out before.
+      job = new Job(UUID.randomUUID().toString(), projectName, refinementPaths);
+      jobs.put(job.id(), job);
+    }
+    job.emit("state", "{\"state\":\"queued\"}");
+    try {
+      runner.execute(() -> run(job));
+    } catch (RejectedExecutionException e) {
+      synchronized (jobs) {
+        jobs.remove(job.id());
+      }
+      throw e;
+    }
+    return job;
+  }
+
+  /** The job with this id, or null if unknown or expired. */
+  public Job get(String id) {
+    synchronized (jobs) {
+      expire();
+      return jobs.get(id);
+    }
+  }
+
+  public int size() {
+    synchronized (jobs) {
+      return jobs.size();
+    }
+  }
+
+  private void expire() {
+    long now = System.currentTimeMillis();
+    jobs.values().removeIf(job -> job.finishedAt > 0 && now - job.finishedAt > ttlMillis);
+  }
+
+  private boolean evictOldestFinished() {
+    for (Iterator<Job> it = jobs.values().iterator(); it.hasNext(); ) {
+      if (it.next().finishedAt > 0) {
+        it.remove();
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** Waits for a generation permit, so jobs and synchronous requests share one limit. */
+  private void run(Job job) {
+    try {
+      generationPermits.acquire();
+    } catch (InterruptedException e) {
+      fail(job, "Generation interrupted");
+      Thread.currentThread().interrupt();
+      return;
+    }
+    try {
+      runWithPermit(job);
+    } finally {
+      generationPermits.release();
+    }
+  }
+
+  private void runWithPermit(Job job) {
+    job.state = State.RUNNING;
+    job.emit("state", "{\"state\":\"running\"}");
+    CompletionService<EventBIR> completion = new ExecutorCompletionService<>(refinementPool);
+    List<Future<EventBIR>> futures = new ArrayList<>(job.refinementPaths.size());
+    for (int i = 0; i < job.refinementPaths.size(); i++) {
+      List<Path> patternPaths = job.refinementPaths.get(i);
+      int refinementIndex = i + 1;
+      futures.add(completion.submit(() -> runRefinement(job, refinementIndex, patternPaths)));
+    }
+    try {
+      for (int i = 0; i < futures.size(); i++) {
+        completion.take().get();
+      }
+      List<EventBIR> outputs = new ArrayList<>(futures.size());
+      for (Future<EventBIR> future : futures) {
+        outputs.add(future.get());
+      }
+      job.outputs = List.copyOf(outputs);
+      job.finish(State.SUCCEEDED, "done", "{\"state\":\"succeeded\",\"artifact\":"
+          + JsonWriter.quoted("/api/jobs/" + job.id() + "/artifact") + "}");
+    } catch (ExecutionException e) {
+      futures.forEach(f -> f.cancel(true));
+      fail(job, String.valueOf(e.getCause().getMessage()));
+    } catch (InterruptedException e) {
+      futures.forEach(f -> f.cancel(true));
+      fail(job, "Generation interrupted");
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static void fail(Job job, String message) {
+    job.error = message;
+    job.finish(State.FAILED, "failed", "{\"state\":\"failed\",\"message\":" + JsonWriter.quoted(message) + "}");
+  }
+
+  private EventBIR runRefinement(Job job, int refinement, List<Path> patternPaths) throws Exception {
+    job.stage(refinement, "parse", "started");
+    List<PatternModel> models = service.parseAll(patternPaths);
+    job.stage(refinement, "parse", "done");
+
+    job.stage(refinement, "compose", "started");
+    PatternModel model = service.composeParsed(patternPaths, models);
+    job.stage(refinement, "compose", "done");
+
+    job.stage(refinement, "map", "started");
+    EventBIR ir = service.mapper().toEventB(model, refinement);
+    job.stage(refinement, "map", "done");
+
+    if (persistArtifacts) {
+      job.stage(refinement, "write", "started");
+      try {
+        service.writeToProject(job.projectName(), ir);
+      } catch (IOException e) {
+        throw new IOException("Failed to write files: " + e.getMessage(), e);
+      }
+      job.stage(refinement, "write", "done");
+    } else {
+      job.stage(refinement, "write", "skipped");
+    }
+    return ir;
+  }
+
+  public static final class Job {
+    private final String id;
+    private final String projectName;
+    private final List<List<Path>> refinementPaths;
+    private final List<Event> events = new ArrayList<>();
+    private volatile State state = State.QUEUED;
+    private volatile List<EventBIR> outputs;
+    private volatile String error;
+    private volatile long finishedAt;
+
+    private Job(String id, String projectName, List<List<Path>> refinementPaths) {
+      this.id = id;
+      this.projectName = projectName;
+      this.refinementPaths = List.copyOf(refinementPaths);
+    }
+
+    public String id() {
+      return id;
+    }
+
+    public String projectName() {
+      return projectName;
+    }
+
+    public int refinementCount() {
+      return refinementPaths.size();
+    }
+
+    public State state() {
+      return state;
+    }
+
+    public boolean finished() {
+      return finishedAt > 0;
+    }
+
+    /** Rendered refinements in order; null unless the job succeeded. */
+    public List<EventBIR> outputs() {
+      return outputs;
+    }
+
+    public String error() {
+      return error;
+    }
+
+    /**
+     * Events with an id greater than {@code lastId}, waiting up to {@code timeoutMillis} for one
+     * to arrive. Returns an empty list on timeout or when the job has finished and all events
+     * were seen.
+     */
+    public synchronized List<Event> eventsAfter(long lastId, long timeoutMillis) throws InterruptedException {
+      long deadline = System.currentTimeMillis() + timeoutMillis;
+      while (events.size() <= lastId && finishedAt == 0) {
+        long remaining = deadline - System.currentTimeMillis();
+        if (remaining <= 0) break;
+        wait(remaining);
+      }
+      int from = (int) Math.min(Math.max(lastId, 0), events.size());
+      return List.copyOf(events.subList(from, events.size()));
+    }
+
+    private void stage(int refinement, String stage, String status) {
+      emit("stage", "{\"refinement\":" + refinement + ",\"stage\":" + JsonWriter.quoted(stage)
+          + ",\"status\":" + JsonWriter.quoted(status) + "}");
+    }
+
+    private synchronized void emit(String type, String data) {
+      events.add(new Event(events.size() + 1, type, data));
+      notifyAll();
+    }
+
+    private synchronized void finish(State finalState, String type, String data) {
+      state = finalState;
+      events.add(new Event(events.size() + 1, type, data));
+      finishedAt = System.currentTimeMillis();
+      notifyAll();
+    }
+  }
+}
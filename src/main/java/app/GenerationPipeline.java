@@ -0,0 +1,228 @@
+package app;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Staged variant of {@link GenerationService#generate}: parse → compose → map → write, each stage
+ * with its own worker threads, connected by bounded queues. A full queue blocks the stage feeding
+ * it (and ultimately {@link #submit}), so a slow disk throttles producers instead of letting
+ * rendered output pile up, while writing one project overlaps composing the next.
+ *
+ * <p>Stages share the service's caches, so results are identical to sequential generation.
+ */
+public class GenerationPipeline implements AutoCloseable {
+
+  /** Worker threads per stage and the capacity of each hand-off queue. */
+  public record Settings(int parseThreads, int composeThreads, int mapThreads, int writeThreads, int queueCapacity) {
+    public Settings {
+      if (parseThreads < 1 || composeThreads < 1 || mapThreads < 1 || writeThreads < 1 || queueCapacity < 1) {
+        throw new IllegalArgumentException("Pipeline threads and queue capacity must be positive");
+      }
+    }
+
+    /** CPU-bound stages get {@code parallelism} threads; the write stage half as many. */
+    public static Settings forParallelism(int parallelism) {
+      return new Settings(parallelism, parallelism, parallelism, Math.max(1, parallelism / 2), 2 * parallelism);
+    }
+  }
+
+  private static final Task POISON = new Task(List.of(), null);
+
+  private final GenerationService service;
+  private final boolean incremental;
+  private final Stage parse;
+  private final Stage compose;
+  private final Stage map;
+  private final Stage write;
+  private volatile boolean closed;
+
+  public GenerationPipeline(GenerationService service, Settings settings, boolean incremental) {
+    this.service = service;
+    this.incremental = incremental;
+    // Built back to front so each stage knows its successor.
+    this.write = new Stage("write", settings.writeThreads(), settings.queueCapacity(), this::write, null);
+    this.map = new Stage("map", settings.mapThreads(), settings.queueCapacity(), this::map, write);
+    this.compose = new Stage("compose", settings.composeThreads(), settings.queueCapacity(), this::compose, map);
+    this.parse = new Stage("parse", settings.parseThreads(), settings.queueCapacity(), this::parse, compose);
+  }
+
+  /**
+   * Queues a project for generation, blocking while the parse queue is full. The future
+   * completes with true once the project is written, or false if incremental generation found it
+   * up to date.
+   */
+  public CompletableFuture<Boolean> submit(List<Path> patternXmls, String projectName) throws InterruptedException {
+    if (patternXmls == null || patternXmls.isEmpty()) {
+      throw new IllegalArgumentException("No pattern XML paths provided");
+    }
+    if (closed) {
+      throw new IllegalStateException("Pipeline is closed");
+    }
+    Task task = new Task(List.copyOf(patternXmls), projectName);
+    parse.queue.put(task);
+    return task.done;
+  }
+
+  /**
+   * Finishes every submitted project, then stops the stage threads. If the caller is interrupted
+   * while waiting, the stages are stopped at once, unfinished projects are cancelled and the
+   * interrupt flag is restored.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    List<Stage> stages = List.of(parse, compose, map, write);
+    try {
+      for (Stage stage : stages) {
+        stage.drain();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      for (Stage stage : stages) {
+        stage.stop();
+      }
+      for (Stage stage : stages) {
+        stage.cancelQueued();
+      }
+    }
+  }
+
+  private boolean parse(Task task) throws Exception {
+    task.projectDir = service.rodinService().ensureProject(task.projectName);
+    if (incremental) {
+      task.manifest = service.manifest(task.patternXmls);
+      if (GenerationService.upToDate(task.projectDir, task.manifest)) {
+        task.done.complete(false);
+        return false;
+      }
+    }
+    // Sequential per task: the stage's own threads provide the parallelism.
+    List<PatternModel> models = new ArrayList<>(task.patternXmls.size());
+    List<PatternParseException.Failure> failures = new ArrayList<>();
+    for (Path path : task.patternXmls) {
+      try {
+        models.add(service.modelCache().parse(path));
+      } catch (Exception e) {
+        failures.add(new PatternParseException.Failure(path, e));
+      }
+    }
+    if (!failures.isEmpty()) {
+      throw new PatternParseException(failures);
+    }
+    task.models = models;
+    return true;
+  }
+
+  private boolean compose(Task task) throws Exception {
+    task.model = service.composeParsed(task.patternXmls, task.models);
+    task.models = null;
+    return true;
+  }
+
+  private boolean map(Task task) {
+    task.ir = service.mapper().toEventB(task.model, 0);
+    task.model = null;
+    return true;
+  }
+
+  private boolean write(Task task) throws Exception {
+    EventBIR ir = task.ir;
+    service.writer().write(task.projectDir, ir);
+    if (task.manifest != null) {
+      GenerationService.recordOutputs(task.projectDir, task.manifest, ir.refinement(), ir.ctxName(), ir.machName());
+    }
+    service.rodinService().refresh(task.projectDir);
+    task.done.complete(true);
+    return false;
+  }
+
+  @FunctionalInterface
+  private interface Step {
+    /** Processes {@code task}; returns true to hand it on to the next stage. */
+    boolean run(Task task) throws Exception;
+  }
+
+  private static final class Stage {
+    private final BlockingQueue<Task> queue;
+    private final List<Thread> workers = new ArrayList<>();
+
+    Stage(String name, int threads, int capacity, Step step, Stage next) {
+      this.queue = new ArrayBlockingQueue<>(capacity);
+      for (int i = 1; i <= threads; i++) {
+        Thread t = new Thread(() -> work(step, next), "pipeline-" + name + "-" + i);
+        t.setDaemon(true);
+        workers.add(t);
+        t.start();
+      }
+    }
+
+    private void work(Step step, Stage next) {
+      Task task = null;
+      try {
+        while (true) {
+          task = queue.take();
+          if (task == POISON) return;
+          boolean forward;
+          try {
+            forward = step.run(task);
+          } catch (Throwable t) {
+            task.done.completeExceptionally(t);
+            task = null;
+            continue;
+          }
+          if (forward) next.queue.put(task);
+          // Completed or owned by the next stage now; an interrupt must not cancel it.
+          task = null;
+        }
+      } catch (InterruptedException e) {
+        // Stopped by close(); a task being handed on would otherwise never complete.
+        if (task != null && task != POISON) task.done.cancel(false);
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    /** Lets queued tasks through, then stops: one poison per worker, queued behind real work. */
+    void drain() throws InterruptedException {
+      for (int i = 0; i < workers.size(); i++) {
+        queue.put(POISON);
+      }
+      for (Thread t : workers) {
+        t.join();
+      }
+    }
+
+    void stop() {
+      for (Thread t : workers) {
+        t.interrupt();
+      }
+    }
+
+    /** Cancels tasks still waiting in this stage's queue. */
+    void cancelQueued() {
+      for (Task task; (task = queue.poll()) != null; ) {
+        if (task != POISON) task.done.cancel(false);
+      }
+    }
+  }
+
+  private static final class Task {
+    final List<Path> patternXmls;
+    final String projectName;
+    final CompletableFuture<Boolean> done = new CompletableFuture<>();
+    Path projectDir;
+    BuildManifest manifest;
+    List<PatternModel> models;
+    PatternModel model;
+    EventBIR ir;
+
+    Task(List<Path> patternXmls, String projectName) {
+      this.patternXmls = patternXmls;
+      this.projectName = projectName;
+    }
+  }
+}
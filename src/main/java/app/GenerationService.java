@@ -4,19 +4,44 @@ import java.io.IOException;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class GenerationService {
-  private final PatternDomParser parser;
+  private static final int PARSE_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors());
+  private static final ExecutorService PARSE_POOL = Executors.newFixedThreadPool(PARSE_THREADS, daemonThreads("pattern-parse"));
+
+  private final PatternModelCache parser;
   private final EventBMapper mapper;
   private final EventBWriter writer;
   private final RodinProjectService rodinService;
-  private final PatternComposer composer = new PatternComposer();
+  private final PatternCombinationEngine combinationEngine;
+  private final PatternComposer composer;
+  private final CompositionCache compositions;
+  /** Serialises writes to the same project; striped so the lock table stays bounded. */
+  private final Object[] projectLocks = new Object[64];
+
+  public GenerationService(PatternParser parser, EventBMapper mapper, EventBWriter writer, RodinProjectService rodinService) {
+    this(parser, mapper, writer, rodinService, new PatternCombinationEngine());
+  }
 
-  public GenerationService(PatternDomParser parser, EventBMapper mapper, EventBWriter writer, RodinProjectService rodinService) {
-    this.parser = parser;
+  public GenerationService(PatternParser parser, EventBMapper mapper, EventBWriter writer,
+                           RodinProjectService rodinService, PatternCombinationEngine combinationEngine) {
+    this.parser = parser instanceof PatternModelCache cache
+        ? cache
+        : new PatternModelCache(new SnapshotPatternParser(parser));
     this.mapper = mapper;
     this.writer = writer;
     this.rodinService = rodinService;
+    this.combinationEngine = combinationEngine;
+    this.composer = new PatternComposer(combinationEngine);
+    this.compositions = new CompositionCache(composer);
+    for (int i = 0; i < projectLocks.length; i++) projectLocks[i] = new Object();
   }
 
   public void generate(Path patternXml, String projectName, ReqSpec requirements) throws Exception {
@@ -24,15 +49,101 @@ public class GenerationService {
   }
 
   public EventBIR compose(List<Path> patternXmls, int refinement) throws Exception {
+    return mapper.toEventB(composeModel(patternXmls), refinement);
+  }
+
+  /** Parses and composes the given patterns into a single model (cached; see CompositionCache). */
+  public PatternModel composeModel(List<Path> patternXmls) throws Exception {
     if (patternXmls == null || patternXmls.isEmpty()) {
       throw new IllegalArgumentException("No pattern XML paths provided");
     }
-    List<PatternModel> models = new ArrayList<>();
+    if (patternXmls.size() == 1) {
+      return seeded(patternXmls.get(0), parser.parse(patternXmls.get(0)));
+    }
+    List<String> fingerprints = fingerprints(patternXmls);
+    return fingerprints == null
+        ? composer.compose(parseAll(patternXmls))
+        : compositions.compose(fingerprints, from -> parseAll(patternXmls.subList(from, patternXmls.size())));
+  }
+
+  /**
+   * Composes models already parsed from {@code patternXmls} (same order), going through the
+   * composition cache like {@link #composeModel}.
+   */
+  PatternModel composeParsed(List<Path> patternXmls, List<PatternModel> models) throws Exception {
+    if (models.size() == 1) {
+      return seeded(patternXmls.get(0), models.get(0));
+    }
+    List<String> fingerprints = fingerprints(patternXmls);
+    return fingerprints == null
+        ? composer.compose(models)
+        : compositions.compose(fingerprints, from -> models.subList(from, models.size()));
+  }
+
+  /** Seeds the composition cache with a pattern used on its own and returns its model. */
+  private PatternModel seeded(Path patternXml, PatternModel model) {
+    try {
+      compositions.seed(parser.fingerprint(patternXml), model);
+    } catch (IOException e) {
+      // Parsed a moment ago; if it is gone now the next request reports it.
+    }
+    return model;
+  }
+
+  /** Content fingerprints of the inputs, or null if a file cannot be read (reported by parsing). */
+  private List<String> fingerprints(List<Path> patternXmls) {
+    List<String> fingerprints = new ArrayList<>(patternXmls.size());
+    try {
+      for (Path path : patternXmls) {
+        fingerprints.add(parser.fingerprint(path));
+      }
+    } catch (IOException e) {
+      return null;
+    }
+    return fingerprints;
+  }
+
+  /**
+   * Parses the given patterns concurrently on a bounded pool, keeping input order. Every file is
+   * attempted; failures are collected per file and reported together as a
+   * {@link PatternParseException}.
+   */
+  List<PatternModel> parseAll(List<Path> patternXmls) throws Exception {
+    if (patternXmls.size() == 1) {
+      return List.of(parser.parse(patternXmls.get(0)));
+    }
+    List<Future<PatternModel>> futures = new ArrayList<>(patternXmls.size());
     for (Path path : patternXmls) {
-      models.add(parser.parse(path));
+      futures.add(PARSE_POOL.submit(() -> parser.parse(path)));
     }
-    PatternModel model = models.size() == 1 ? models.get(0) : composer.compose(models);
-    return mapper.toEventB(model, refinement);
+    List<PatternModel> models = new ArrayList<>(patternXmls.size());
+    List<PatternParseException.Failure> failures = new ArrayList<>();
+    for (int i = 0; i < futures.size(); i++) {
+      try {
+        models.add(futures.get(i).get());
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof Error error) throw error;
+        failures.add(new PatternParseException.Failure(patternXmls.get(i), (Exception) cause));
+      } catch (InterruptedException e) {
+        futures.forEach(f -> f.cancel(true));
+        Thread.currentThread().interrupt();
+        throw e;
+      }
+    }
+    if (!failures.isEmpty()) {
+      throw new PatternParseException(failures);
+    }
+    return models;
+  }
+
+  static ThreadFactory daemonThreads(String prefix) {
+    AtomicInteger counter = new AtomicInteger();
+    return runnable -> {
+      Thread t = new Thread(runnable, prefix + "-" + counter.incrementAndGet());
+      t.setDaemon(true);
+      return t;
+    };
   }
 
   public EventBIR compose(List<Path> patternXmls) throws Exception {
@@ -41,16 +152,93 @@ public class GenerationService {
 
   public void generate(List<Path> patternXmls, String projectName, ReqSpec requirements) throws Exception {
     Path projectDir = rodinService.ensureProject(projectName);
-    EventBIR ir = compose(patternXmls);
-    writer.write(projectDir, ir);
+    writer.write(projectDir, mapper, composeModel(patternXmls), 0);
     rodinService.refresh(projectDir);
   }
 
-  public Path writeToProject(String projectName, EventBIR ir) throws IOException {
+  /**
+   * Like {@link #generate(List, String, ReqSpec)}, but skips parsing, composition and writing when
+   * the project's {@link BuildManifest} shows identical inputs, rules and intact outputs.
+   *
+   * @return true if the project was (re)generated, false if it was already up to date
+   */
+  public boolean generateIncremental(List<Path> patternXmls, String projectName, ReqSpec requirements)
+      throws Exception {
+    if (patternXmls == null || patternXmls.isEmpty()) {
+      throw new IllegalArgumentException("No pattern XML paths provided");
+    }
     Path projectDir = rodinService.ensureProject(projectName);
-    writer.write(projectDir, ir);
+    BuildManifest current = manifest(patternXmls);
+    if (upToDate(projectDir, current)) {
+      return false;
+    }
+    EventBMapper.Names names = writer.write(projectDir, mapper, composeModel(patternXmls), 0);
+    recordOutputs(projectDir, current, names.refinement(), names.ctxName(), names.machName());
     rodinService.refresh(projectDir);
-    return projectDir.resolve("machine" + ir.refinement());
+    return true;
+  }
+
+  /** Manifest for the given inputs and this service's rules, without outputs. */
+  BuildManifest manifest(List<Path> patternXmls) throws IOException {
+    List<String> inputs = new ArrayList<>(patternXmls.size());
+    for (Path path : patternXmls) {
+      inputs.add(BuildManifest.input(parser.fingerprint(path), path));
+    }
+    return new BuildManifest(BuildManifest.FORMAT, combinationEngine.fingerprint(), inputs, Map.of());
+  }
+
+  static boolean upToDate(Path projectDir, BuildManifest current) throws IOException {
+    BuildManifest previous = BuildManifest.read(projectDir);
+    return previous != null && previous.upToDate(current, projectDir);
+  }
+
+  static void recordOutputs(Path projectDir, BuildManifest current, int refinement, String ctxName, String machName)
+      throws IOException {
+    Path refinementDir = projectDir.resolve("machine" + refinement);
+    current.withOutputs(projectDir, List.of(
+        refinementDir.resolve(ctxName + ".ctx"),
+        refinementDir.resolve(machName + ".bcm"))).write(projectDir);
+  }
+
+  public Path writeToProject(String projectName, EventBIR ir) throws IOException {
+    return writeToProject(projectName, List.of(ir)).resolve("machine" + ir.refinement());
+  }
+
+  /**
+   * Writes all {@code outputs} to the project and returns its directory. Writes to one project
+   * never interleave, so concurrent requests for it leave one request's files, not a mix.
+   */
+  public Path writeToProject(String projectName, List<EventBIR> outputs) throws IOException {
+    synchronized (projectLocks[Math.floorMod(projectName.hashCode(), projectLocks.length)]) {
+      Path projectDir = rodinService.ensureProject(projectName);
+      for (EventBIR ir : outputs) writer.write(projectDir, ir);
+      rodinService.refresh(projectDir);
+      return projectDir;
+    }
+  }
+
+  EventBMapper mapper() {
+    return mapper;
+  }
+
+  EventBWriter writer() {
+    return writer;
+  }
+
+  RodinProjectService rodinService() {
+    return rodinService;
+  }
+
+  public PatternCombinationEngine combinationEngine() {
+    return combinationEngine;
+  }
+
+  public PatternModelCache modelCache() {
+    return parser;
+  }
+
+  public CompositionCache compositionCache() {
+    return compositions;
   }
 
   public Path workspaceRoot() {
@@ -0,0 +1,313 @@
+package app;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Minimal pull parser for JSON (RFC 8259) read incrementally from a stream, so request bodies
+ * never have to be materialised as a String. Values are consumed in document order with
+ * {@code begin*}/{@code end*}, {@link #nextName}, {@link #nextString} and {@link #skipValue}.
+ * Malformed input, and nesting deeper than {@link #MAX_DEPTH}, raise {@link IllegalArgumentException}.
+ */
+public final class JsonReader {
+
+  public enum Token { BEGIN_OBJECT, END_OBJECT, BEGIN_ARRAY, END_ARRAY, NAME, STRING, NUMBER, BOOLEAN, NULL, END }
+
+  /** Deepest nesting of objects and arrays accepted; keeps {@link #skipValue} off deep stacks. */
+  public static final int MAX_DEPTH = 64;
+
+  private static final int BUFFER_SIZE = 8192;
+
+  private final Reader in;
+  private final char[] buffer = new char[BUFFER_SIZE];
+  private int pos;
+  private int limit;
+  private long offset;
+
+  /**
+   * Parser state per nesting level: {@code d}/{@code D} document before/after its value;
+   * {@code a} empty array, {@code A} after an element, {@code b} after a comma; {@code o} empty
+   * object, {@code O} after a member, {@code p} after a comma, {@code n} after a name and colon.
+   */
+  private char[] stack = new char[32];
+  private int depth;
+
+  public JsonReader(InputStream in) {
+    this(new InputStreamReader(in, StandardCharsets.UTF_8));
+  }
+
+  public JsonReader(Reader in) {
+    this.in = in;
+    stack[depth++] = 'd';
+  }
+
+  /** Type of the next token, without consuming it. */
+  public Token peek() throws IOException {
+    int c = nextNonWhitespace();
+    char state = stack[depth - 1];
+    if (c < 0) {
+      if (state == 'D' || state == 'd' && depth == 1) return Token.END;
+      throw error("Unexpected end of input");
+    }
+    switch (state) {
+      case 'a' -> {
+        return c == ']' ? Token.END_ARRAY : valueToken(c);
+      }
+      case 'A', 'O' -> {
+        char close = state == 'A' ? ']' : '}';
+        if (c == close) return state == 'A' ? Token.END_ARRAY : Token.END_OBJECT;
+        if (c != ',') throw error("Expected ',' or '" + close + "'");
+        pos++;
+        stack[depth - 1] = state == 'A' ? 'b' : 'p';
+        return peek();
+      }
+      case 'o', 'p' -> {
+        if (c == '}' && state == 'o') return Token.END_OBJECT;
+        if (c != '"') throw error("Expected member name");
+        return Token.NAME;
+      }
+      case 'D' -> throw error("Unexpected data after document");
+      default -> {
+        return valueToken(c);
+      }
+    }
+  }
+
+  public void beginObject() throws IOException {
+    expect(Token.BEGIN_OBJECT);
+    pos++;
+    valueConsumed();
+    push('o');
+  }
+
+  public void endObject() throws IOException {
+    expect(Token.END_OBJECT);
+    pos++;
+    depth--;
+  }
+
+  public void beginArray() throws IOException {
+    expect(Token.BEGIN_ARRAY);
+    pos++;
+    valueConsumed();
+    push('a');
+  }
+
+  public void endArray() throws IOException {
+    expect(Token.END_ARRAY);
+    pos++;
+    depth--;
+  }
+
+  /** True while the current object or array has further members. */
+  public boolean hasNext() throws IOException {
+    Token token = peek();
+    return token != Token.END_OBJECT && token != Token.END_ARRAY && token != Token.END;
+  }
+
+  public String nextName() throws IOException {
+    expect(Token.NAME);
+    String name = readString();
+    if (nextNonWhitespace() != ':') throw error("Expected ':'");
+    pos++;
+    stack[depth - 1] = 'n';
+    return name;
+  }
+
+  public String nextString() throws IOException {
+    expect(Token.STRING);
+    String value = readString();
+    valueConsumed();
+    return value;
+  }
+
+  /** Skips the next value, including nested objects and arrays. */
+  public void skipValue() throws IOException {
+    switch (peek()) {
+      case BEGIN_OBJECT -> {
+        beginObject();
+        while (hasNext()) {
+          nextName();
+          skipValue();
+        }
+        endObject();
+      }
+      case BEGIN_ARRAY -> {
+        beginArray();
+        while (hasNext()) skipValue();
+        endArray();
+      }
+      case STRING -> nextString();
+      case NUMBER -> {
+        skipNumber();
+        valueConsumed();
+      }
+      case BOOLEAN -> {
+        skipLiteral(buffer[pos] == 't' ? "true" : "false");
+        valueConsumed();
+      }
+      case NULL -> {
+        skipLiteral("null");
+        valueConsumed();
+      }
+      default -> throw error("Expected a value");
+    }
+  }
+
+  private void skipLiteral(String literal) throws IOException {
+    if (!fill(literal.length())) throw error("Expected '" + literal + "'");
+    for (int i = 0; i < literal.length(); i++) {
+      if (buffer[pos + i] != literal.charAt(i)) throw error("Expected '" + literal + "'");
+    }
+    pos += literal.length();
+  }
+
+  /** {@code -? (0 | [1-9][0-9]*) (. [0-9]+)? ([eE] [+-]? [0-9]+)?} */
+  private void skipNumber() throws IOException {
+    skipIf('-');
+    if (!skipIf('0')) skipDigits();
+    if (skipIf('.')) skipDigits();
+    if (skipIf('e') || skipIf('E')) {
+      if (!skipIf('+')) skipIf('-');
+      skipDigits();
+    }
+  }
+
+  private boolean skipIf(char c) throws IOException {
+    if (!fill(1) || buffer[pos] != c) return false;
+    pos++;
+    return true;
+  }
+
+  /** One or more digits. */
+  private void skipDigits() throws IOException {
+    int count = 0;
+    while (fill(1) && buffer[pos] >= '0' && buffer[pos] <= '9') {
+      pos++;
+      count++;
+    }
+    if (count == 0) throw error("Expected a digit");
+  }
+
+  private Token valueToken(int c) {
+    return switch (c) {
+      case '{' -> Token.BEGIN_OBJECT;
+      case '[' -> Token.BEGIN_ARRAY;
+      case '"' -> Token.STRING;
+      case 't', 'f' -> Token.BOOLEAN;
+      case 'n' -> Token.NULL;
+      default -> {
+        if (c == '-' || (c >= '0' && c <= '9')) yield Token.NUMBER;
+        throw error("Unexpected character '" + (char) c + "'");
+      }
+    };
+  }
+
+  private void expect(Token expected) throws IOException {
+    Token actual = peek();
+    if (actual != expected) throw error("Expected " + expected + " but was " + actual);
+  }
+
+  /** Advances the enclosing scope past the value just read. */
+  private void valueConsumed() {
+    char state = stack[depth - 1];
+    stack[depth - 1] = switch (state) {
+      case 'a', 'b' -> 'A';
+      case 'n' -> 'O';
+      default -> 'D';
+    };
+  }
+
+  private void push(char scope) {
+    // stack[0] is the document itself, so depth - 1 objects and arrays are open.
+    if (depth > MAX_DEPTH) throw error("Nesting deeper than " + MAX_DEPTH + " levels");
+    if (depth == stack.length) {
+      char[] grown = new char[depth * 2];
+      System.arraycopy(stack, 0, grown, 0, depth);
+      stack = grown;
+    }
+    stack[depth++] = scope;
+  }
+
+  /** Reads a string starting at the opening quote at {@code pos}. */
+  private String readString() throws IOException {
+    pos++;
+    StringBuilder sb = new StringBuilder();
+    while (true) {
+      if (!fill(1)) throw error("Unterminated string");
+      int start = pos;
+      while (pos < limit) {
+        char c = buffer[pos];
+        if (c == '"') {
+          sb.append(buffer, start, pos - start);
+          pos++;
+          return sb.toString();
+        }
+        if (c == '\\') break;
+        if (c < 0x20) throw error("Control character in string");
+        pos++;
+      }
+      sb.append(buffer, start, pos - start);
+      if (pos < limit) {
+        pos++;
+        sb.append(readEscape());
+      }
+    }
+  }
+
+  private char readEscape() throws IOException {
+    if (!fill(1)) throw error("Unterminated escape");
+    char c = buffer[pos++];
+    return switch (c) {
+      case '"', '\\', '/' -> c;
+      case 'b' -> '\b';
+      case 'f' -> '\f';
+      case 'n' -> '\n';
+      case 'r' -> '\r';
+      case 't' -> '\t';
+      case 'u' -> {
+        if (!fill(4)) throw error("Truncated unicode escape");
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+          int digit = Character.digit(buffer[pos++], 16);
+          if (digit < 0) throw error("Invalid unicode escape");
+          value = (value << 4) | digit;
+        }
+        yield (char) value;
+      }
+      default -> throw error("Invalid escape '\\" + c + "'");
+    };
+  }
+
+  /** Next non-whitespace char without consuming it, or -1 at end of input. */
+  private int nextNonWhitespace() throws IOException {
+    while (fill(1)) {
+      char c = buffer[pos];
+      if (c != ' ' && c != '\t' && c != '\n' && c != '\r') return c;
+      pos++;
+    }
+    return -1;
+  }
+
+  /** Ensures at least {@code n} unread chars are buffered; false at end of input. */
+  private boolean fill(int n) throws IOException {
+    if (limit - pos >= n) return true;
+    offset += pos;
+    System.arraycopy(buffer, pos, buffer, 0, limit - pos);
+    limit -= pos;
+    pos = 0;
+    while (limit < n) {
+      int read = in.read(buffer, limit, buffer.length - limit);
+      if (read < 0) return false;
+      limit += read;
+    }
+    return true;
+  }
+
+  private IllegalArgumentException error(String message) {
+    return new IllegalArgumentException(message + " at offset " + (offset + pos));
+  }
+}
@@ -0,0 +1,131 @@
+package app;
+
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * Streaming JSON writer over an {@link Appendable}; the counterpart of {@link JsonReader}.
+ * Separators are inserted automatically; names and values are written in document order.
+ */
+public final class JsonWriter {
+
+  private final Appendable out;
+  /** One flag per open container: whether it already has a member. */
+  private boolean[] hasMember = new boolean[16];
+  private int depth;
+  private boolean afterName;
+
+  public JsonWriter(Appendable out) {
+    this.out = out;
+  }
+
+  public JsonWriter beginObject() throws IOException {
+    return open('{');
+  }
+
+  public JsonWriter endObject() throws IOException {
+    return close('}');
+  }
+
+  public JsonWriter beginArray() throws IOException {
+    return open('[');
+  }
+
+  public JsonWriter endArray() throws IOException {
+    return close(']');
+  }
+
+  public JsonWriter name(String name) throws IOException {
+    separate();
+    quote(name);
+    out.append(':');
+    afterName = true;
+    return this;
+  }
+
+  public JsonWriter value(String value) throws IOException {
+    separate();
+    if (value == null) {
+      out.append("null");
+    } else {
+      quote(value);
+    }
+    return this;
+  }
+
+  public JsonWriter value(long value) throws IOException {
+    separate();
+    out.append(Long.toString(value));
+    return this;
+  }
+
+  public JsonWriter value(boolean value) throws IOException {
+    separate();
+    out.append(value ? "true" : "false");
+    return this;
+  }
+
+  /** JSON string literal for {@code value}, quotes included. */
+  public static String quoted(String value) {
+    StringBuilder sb = new StringBuilder(value.length() + 2);
+    try {
+      new JsonWriter(sb).quote(value);
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+    return sb.toString();
+  }
+
+  private JsonWriter open(char bracket) throws IOException {
+    separate();
+    out.append(bracket);
+    if (depth == hasMember.length) {
+      boolean[] grown = new boolean[depth * 2];
+      System.arraycopy(hasMember, 0, grown, 0, depth);
+      hasMember = grown;
+    }
+    hasMember[depth++] = false;
+    return this;
+  }
+
+  private JsonWriter close(char bracket) throws IOException {
+    depth--;
+    out.append(bracket);
+    return this;
+  }
+
+  private void separate() throws IOException {
+    if (afterName) {
+      afterName = false;
+      return;
+    }
+    if (depth > 0) {
+      if (hasMember[depth - 1]) out.append(',');
+      hasMember[depth - 1] = true;
+    }
+  }
+
+  private void quote(String s) throws IOException {
+    out.append('"');
+    int start = 0;
+    int len = s.length();
+    for (int i = 0; i < len; i++) {
+      char c = s.charAt(i);
+      String escape = switch (c) {
+        case '"' -> "\\\"";
+        case '\\' -> "\\\\";
+        case '\n' -> "\\n";
+        case '\r' -> "\\r";
+        case '\t' -> "\\t";
+        case '\b' -> "\\b";
+        case '\f' -> "\\f";
+        default -> c < 0x20 || c == '\u2028' || c == '\u2029' ? String.format(Locale.ROOT, "\\u%04x", (int) c) : null;
+      };
+      if (escape != null) {
+        out.append(s, start, i).append(escape);
+        start = i + 1;
+      }
+    }
+    out.append(s, start, len).append('"');
+  }
+}
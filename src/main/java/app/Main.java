@@ -1,6 +1,7 @@
 package app;
 
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
@@ -13,6 +14,17 @@ public class Main {
     String projectName = null;
     boolean startServer = false;
     int port = 8080;
+    PatternParser parser = new PatternDomParser();
+    Path snapshotDir = null;
+    Path rulesCatalog = null;
+    boolean chainRules = false;
+    boolean incremental = false;
+    String batchSpec = null;
+    int batchJobs = Runtime.getRuntime().availableProcessors();
+    boolean watch = false;
+    boolean pipeline = false;
+    boolean persist = true;
+    WebServer.Limits limits = WebServer.Limits.defaults();
     for (int i = 0; i < args.length; i++) {
       switch (args[i]) {
         case "-i" -> {
@@ -49,21 +61,101 @@ public class Main {
           }
           port = Integer.parseInt(args[++i]);
         }
+        case "--compile-snapshots" -> {
+          if (i + 1 >= args.length) {
+            usage();
+            return;
+          }
+          snapshotDir = Paths.get(args[++i]);
+        }
+        case "--rules" -> {
+          if (i + 1 >= args.length) {
+            usage();
+            return;
+          }
+          rulesCatalog = Paths.get(args[++i]);
+        }
+        case "--chain-rules" -> chainRules = true;
+        case "--incremental" -> incremental = true;
+        case "--watch" -> watch = true;
+        case "--pipeline" -> pipeline = true;
+        case "--no-persist" -> persist = false;
+        case "--virtual-threads" -> limits = new WebServer.Limits(
+            true, limits.handlerThreads(), limits.maxGenerations(), limits.retryAfterSeconds());
+        case "--http-threads" -> {
+          if (i + 1 >= args.length) {
+            usage();
+            return;
+          }
+          limits = new WebServer.Limits(
+              limits.virtualThreads(), Integer.parseInt(args[++i]), limits.maxGenerations(), limits.retryAfterSeconds());
+        }
+        case "--max-generations" -> {
+          if (i + 1 >= args.length) {
+            usage();
+            return;
+          }
+          limits = new WebServer.Limits(
+              limits.virtualThreads(), limits.handlerThreads(), Integer.parseInt(args[++i]), limits.retryAfterSeconds());
+        }
+        case "--batch" -> {
+          if (i + 1 >= args.length) {
+            usage();
+            return;
+          }
+          batchSpec = args[++i];
+        }
+        case "--jobs" -> {
+          if (i + 1 >= args.length) {
+            usage();
+            return;
+          }
+          batchJobs = Integer.parseInt(args[++i]);
+        }
+        case "--parser" -> {
+          if (i + 1 >= args.length) {
+            usage();
+            return;
+          }
+          parser = PatternParser.named(args[++i]);
+          if (parser == null) {
+            usage();
+            return;
+          }
+        }
         default -> {
           // ignore unknown switches for now
         }
       }
     }
+    if (pipeline && batchSpec == null) {
+      System.err.println("--pipeline only applies to batch mode (--batch)");
+      usage();
+      return;
+    }
+    // Watch mode regenerates incrementally, so record manifests from the first run on.
+    incremental |= watch;
+    if (snapshotDir != null) {
+      compileSnapshots(parser, snapshotDir);
+      return;
+    }
     Path projectRoot = Paths.get("").toAbsolutePath();
+    PatternCombinationEngine combinationEngine = rulesCatalog != null
+        ? PatternCombinationEngine.fromCatalog(rulesCatalog)
+        : PatternCombinationEngine.forProject(projectRoot);
+    if (chainRules) {
+      combinationEngine = combinationEngine.withChaining(PatternCombinationEngine.DEFAULT_MAX_ROUNDS);
+    }
     if (startServer) {
       Path workspace = workspacePath != null ? workspacePath : projectRoot.resolve("generated");
       GenerationService generationService = new GenerationService(
-        new PatternDomParser(),
+        parser,
         new EventBMapper(),
         new EventBWriter(),
-        new RodinProjectService(workspace)
+        new RodinProjectService(workspace),
+        combinationEngine
       );
-      WebServer server = new WebServer(projectRoot, generationService);
+      WebServer server = new WebServer(projectRoot, generationService, persist, limits);
       try {
         server.start(port);
         System.out.println("Web server started at http://localhost:" + port);
@@ -72,27 +164,89 @@ public class Main {
       }
       return;
     }
+    if (batchSpec != null) {
+      if (workspacePath == null) {
+        usage();
+        return;
+      }
+      GenerationService generationService = new GenerationService(
+        parser,
+        new EventBMapper(),
+        new EventBWriter(),
+        new RodinProjectService(workspacePath),
+        combinationEngine
+      );
+      long start = System.nanoTime();
+      List<BatchGenerator.Job> jobs = BatchGenerator.load(batchSpec);
+      List<BatchGenerator.Result> results = new BatchGenerator(generationService, batchJobs, incremental, pipeline)
+          .run(jobs);
+      BatchGenerator.printSummary(results, System.nanoTime() - start, System.out);
+      if (watch) {
+        watch(generationService, jobs);
+      } else if (results.stream().anyMatch(r -> r.failure() != null)) {
+        System.exit(1);
+      }
+      return;
+    }
     if (patternXmls.isEmpty() || projectName == null || workspacePath == null) {
       usage();
       return;
     }
     GenerationService generationService = new GenerationService(
-      new PatternDomParser(),
+      parser,
       new EventBMapper(),
       new EventBWriter(),
-      new RodinProjectService(workspacePath)
+      new RodinProjectService(workspacePath),
+      combinationEngine
     );
-    if (patternXmls.size() == 1) {
+    boolean generated = true;
+    if (incremental) {
+      generated = generationService.generateIncremental(patternXmls, projectName, ReqSpec.empty());
+    } else if (patternXmls.size() == 1) {
       generationService.generate(patternXmls.get(0), projectName, ReqSpec.empty());
     } else {
       generationService.generate(patternXmls, projectName, ReqSpec.empty());
     }
-    System.out.println("Generated in: " + workspacePath.resolve(projectName));
+    System.out.println((generated ? "Generated in: " : "Up to date: ") + workspacePath.resolve(projectName));
+    if (watch) {
+      watch(generationService, List.of(new BatchGenerator.Job(projectName, List.copyOf(patternXmls))));
+    }
+  }
+
+  private static void watch(GenerationService generationService, List<BatchGenerator.Job> jobs) throws Exception {
+    try (PatternWatcher watcher = new PatternWatcher(
+        generationService, jobs, PatternWatcher.DEFAULT_DEBOUNCE_MILLIS, System.out)) {
+      System.out.println("Watching " + jobs.size() + " project(s) for pattern changes (Ctrl+C to stop)");
+      watcher.run();
+    }
+  }
+
+  private static void compileSnapshots(PatternParser parser, Path dir) throws Exception {
+    if (!Files.isDirectory(dir)) {
+      System.err.println("Not a directory: " + dir);
+      return;
+    }
+    List<Path> xmls;
+    try (var stream = Files.list(dir)) {
+      xmls = stream.filter(p -> p.getFileName().toString().endsWith(".xml")).sorted().toList();
+    }
+    for (Path xml : xmls) {
+      System.out.println("Compiled: " + PatternSnapshot.compile(parser, xml));
+    }
   }
 
   private static void usage() {
     System.out.println("Usage:");
     System.out.println("  CLI mode:   -i <pattern.xml>[,pattern2.xml...] [-i <patternN.xml> ...] -p <ProjectName> -o <WorkspacePath>");
-    System.out.println("  Server mode: --server [--port <Port>] [-o <WorkspacePath>]");
+    System.out.println("  Server mode: --server [--port <Port>] [-o <WorkspacePath>] [--no-persist]");
+    System.out.println("               [--virtual-threads] [--http-threads <N>] [--max-generations <N>]");
+    System.out.println("  Watch:       add --watch to CLI or batch mode to regenerate projects when their patterns change");
+    System.out.println("  Batch mode:  --batch <jobs.txt|PatternDir|glob> -o <WorkspacePath> [--jobs <N>] [--incremental] [--pipeline]");
+    System.out.println("  Snapshots:   --compile-snapshots <PatternDir> [--parser <dom|stax>]");
+    System.out.println("  Options:     --parser <dom|stax>   XML parser used for pattern files (default: dom)");
+    System.out.println("               --chain-rules         feed composite events back into the rules until fixpoint");
+    System.out.println("               --pipeline            batch: run parse/compose/map/write as overlapping stages");
+    System.out.println("               --incremental         skip generation when inputs, rules and outputs are unchanged");
+    System.out.println("               --rules <catalog>     combination rule catalog (default: ./" + PatternCombinationEngine.CATALOG_FILE + ")");
   }
 }
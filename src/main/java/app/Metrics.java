@@ -0,0 +1,169 @@
+package app;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Process-wide instrumentation, exported by {@link WebServer} at {@code /metrics} in the
+ * Prometheus text format. Recording is lock-free: counters are {@link LongAdder}s and latency
+ * histograms use fixed power-of-two buckets, so a sample costs two {@code nanoTime} calls and
+ * a few atomic increments.
+ */
+public final class Metrics {
+
+  public static final Histogram PARSE = new Histogram();
+  public static final Histogram COMPOSE = new Histogram();
+  public static final Histogram COMBINE = new Histogram();
+  public static final Histogram MAP = new Histogram();
+  public static final Histogram WRITE = new Histogram();
+  public static final Histogram ZIP = new Histogram();
+
+  private static final List<Map.Entry<String, Histogram>> STAGES = List.of(
+      Map.entry("parse", PARSE), Map.entry("compose", COMPOSE), Map.entry("combine", COMBINE),
+      Map.entry("map", MAP), Map.entry("write", WRITE), Map.entry("zip", ZIP));
+
+  private static final Map<String, Route> ROUTES = new ConcurrentHashMap<>();
+
+  private Metrics() {}
+
+  /** Counters for one HTTP route; created once per route and kept for the life of the process. */
+  public static Route route(String path) {
+    return ROUTES.computeIfAbsent(path, p -> new Route());
+  }
+
+  /**
+   * Latency histogram with buckets at 1µs, 2µs, 4µs, ... up to about 16.8s, in the spirit of
+   * HdrHistogram: bounded relative error, constant memory, no locking.
+   */
+  public static final class Histogram {
+    private static final int BUCKETS = 25;
+    private static final String[] BOUNDS = new String[BUCKETS];
+
+    static {
+      for (int i = 0; i < BUCKETS; i++) {
+        BOUNDS[i] = BigDecimal.valueOf(1L << i, 6).stripTrailingZeros().toPlainString();
+      }
+    }
+
+    /** Per bucket, samples at or below its bound; the last slot holds the overflow. */
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS + 1);
+    private final LongAdder sumNanos = new LongAdder();
+
+    public void recordSince(long startNanos) {
+      record(System.nanoTime() - startNanos);
+    }
+
+    public void record(long nanos) {
+      long micros = Math.max(0, nanos) / 1000;
+      int bucket = micros == 0 ? 0 : Math.min(BUCKETS, 64 - Long.numberOfLeadingZeros(micros));
+      counts.incrementAndGet(bucket);
+      sumNanos.add(nanos);
+    }
+
+    private void write(Appendable out, String name, String labels) throws IOException {
+      String prefix = labels.isEmpty() ? "" : labels + ",";
+      long cumulative = 0;
+      for (int i = 0; i < BUCKETS; i++) {
+        cumulative += counts.get(i);
+        out.append(name).append("_bucket{").append(prefix).append("le=\"").append(BOUNDS[i])
+            .append("\"} ").append(Long.toString(cumulative)).append('\n');
+      }
+      cumulative += counts.get(BUCKETS);
+      out.append(name).append("_bucket{").append(prefix).append("le=\"+Inf\"} ")
+          .append(Long.toString(cumulative)).append('\n');
+      out.append(name).append("_sum{").append(labels).append("} ")
+          .append(Double.toString(sumNanos.sum() / 1e9)).append('\n');
+      out.append(name).append("_count{").append(labels).append("} ")
+          .append(Long.toString(cumulative)).append('\n');
+    }
+  }
+
+  /** Request, response-class, error and in-flight counters plus a latency histogram. */
+  public static final class Route {
+    /** Responses by status class: index 2 for 2xx through 5 for 5xx. */
+    private final LongAdder[] responses = new LongAdder[6];
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder inFlight = new LongAdder();
+    private final Histogram duration = new Histogram();
+
+    private Route() {
+      for (int i = 2; i < responses.length; i++) responses[i] = new LongAdder();
+    }
+
+    /** Marks a request as started; pass the result to {@link #finished}. */
+    public long started() {
+      inFlight.increment();
+      return System.nanoTime();
+    }
+
+    /**
+     * Records a completed request. {@code status} is the response code, or -1 if the handler
+     * failed before sending one; that and any 5xx count as errors.
+     */
+    public void finished(long startNanos, int status) {
+      duration.recordSince(startNanos);
+      inFlight.decrement();
+      if (status >= 200 && status < 600) responses[status / 100].increment();
+      if (status < 200 || status >= 500) errors.increment();
+    }
+  }
+
+  /** Writes the stage and route families; callers append their own gauges with {@link #sample}. */
+  public static void writeTo(Appendable out) throws IOException {
+    header(out, "eventb_stage_duration_seconds", "histogram", "Time spent per generation stage.");
+    for (Map.Entry<String, Histogram> stage : STAGES) {
+      stage.getValue().write(out, "eventb_stage_duration_seconds", "stage=\"" + stage.getKey() + "\"");
+    }
+
+    List<Map.Entry<String, Route>> routes = ROUTES.entrySet().stream()
+        .sorted(Map.Entry.comparingByKey()).toList();
+    header(out, "eventb_http_requests_total", "counter", "HTTP responses by route and status class.");
+    for (Map.Entry<String, Route> route : routes) {
+      for (int i = 2; i < route.getValue().responses.length; i++) {
+        out.append("eventb_http_requests_total{route=\"").append(route.getKey()).append("\",code=\"")
+            .append(Integer.toString(i)).append("xx\"} ")
+            .append(Long.toString(route.getValue().responses[i].sum())).append('\n');
+      }
+    }
+    header(out, "eventb_http_request_errors_total", "counter",
+        "HTTP requests that failed with a 5xx response or an exception.");
+    for (Map.Entry<String, Route> route : routes) {
+      sample(out, "eventb_http_request_errors_total", "route=\"" + route.getKey() + "\"",
+          route.getValue().errors.sum());
+    }
+    header(out, "eventb_http_requests_in_flight", "gauge", "HTTP requests currently being handled.");
+    for (Map.Entry<String, Route> route : routes) {
+      sample(out, "eventb_http_requests_in_flight", "route=\"" + route.getKey() + "\"",
+          route.getValue().inFlight.sum());
+    }
+    header(out, "eventb_http_request_duration_seconds", "histogram", "HTTP request latency by route.");
+    for (Map.Entry<String, Route> route : routes) {
+      route.getValue().duration.write(out, "eventb_http_request_duration_seconds",
+          "route=\"" + route.getKey() + "\"");
+    }
+  }
+
+  public static void header(Appendable out, String name, String type, String help) throws IOException {
+    out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+    out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+  }
+
+  public static void sample(Appendable out, String name, String labels, double value) throws IOException {
+    out.append(name);
+    if (!labels.isEmpty()) out.append('{').append(labels).append('}');
+    out.append(' ');
+    if (Double.isNaN(value)) {
+      out.append("NaN");
+    } else if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+      out.append(Long.toString((long) value));
+    } else {
+      out.append(Double.toString(value));
+    }
+    out.append('\n');
+  }
+}
@@ -0,0 +1,176 @@
+package app;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-memory index of the pattern directory: per pattern its variables, events and the
+ * combination rules it takes part in, pre-serialised as JSON with an ETag. A {@link WatchService}
+ * rebuilds the index when files in the directory change, so readers never touch the disk.
+ */
+public class PatternCatalog implements AutoCloseable {
+
+  private static final long DEBOUNCE_MILLIS = 50;
+  private static final long RETRY_MILLIS = 1000;
+
+  /** Serialised catalog; {@code etag} is a strong validator for {@code json}. */
+  public record Snapshot(byte[] json, String etag, int patternCount) {}
+
+  private final Path dir;
+  private final PatternParser parser;
+  private final PatternCombinationEngine engine;
+  private volatile Snapshot snapshot;
+  private WatchService watchService;
+  private WatchKey dirKey;
+
+  public PatternCatalog(Path dir, PatternParser parser, PatternCombinationEngine engine) {
+    this.dir = dir;
+    this.parser = parser;
+    this.engine = engine;
+  }
+
+  /**
+   * Builds the initial index and starts watching the directory. If the directory does not exist
+   * yet, or is removed later, the watcher waits for it to appear and then indexes it.
+   */
+  public void start() throws IOException {
+    refresh();
+    watchService = FileSystems.getDefault().newWatchService();
+    Thread watcher = new Thread(this::watch, "pattern-catalog");
+    watcher.setDaemon(true);
+    watcher.start();
+  }
+
+  public Snapshot snapshot() {
+    return snapshot;
+  }
+
+  /** Re-reads the directory; patterns that fail to parse are listed with their error. */
+  public synchronized void refresh() throws IOException {
+    List<Path> xmls = List.of();
+    if (Files.isDirectory(dir)) {
+      try (var stream = Files.list(dir)) {
+        xmls = stream.filter(p -> p.getFileName().toString().endsWith(".xml")).sorted().toList();
+      }
+    }
+    StringBuilder sb = new StringBuilder();
+    JsonWriter json = new JsonWriter(sb);
+    json.beginArray();
+    for (Path xml : xmls) {
+      json.beginObject();
+      json.name("file").value(xml.getFileName().toString());
+      PatternModel model;
+      try {
+        model = parser.parse(xml);
+      } catch (Exception e) {
+        json.name("error").value(String.valueOf(e.getMessage()));
+        json.endObject();
+        continue;
+      }
+      json.name("name").value(model.name);
+      json.name("variables").beginArray();
+      for (PatternModel.Variable var : model.variables) {
+        if (var != null && var.name != null) json.value(var.name);
+      }
+      json.endArray();
+      json.name("events").beginArray();
+      for (PatternModel.Event event : model.events) {
+        if (event != null && event.name != null) json.value(event.name);
+      }
+      json.endArray();
+      json.name("rules").beginArray();
+      for (String rule : engine.rulesFor(model)) {
+        json.value(rule);
+      }
+      json.endArray();
+      json.endObject();
+    }
+    json.endArray();
+    byte[] bytes = sb.toString().getBytes(StandardCharsets.UTF_8);
+    snapshot = new Snapshot(bytes, "\"" + Hashes.sha256Hex(bytes).substring(0, 32) + "\"", xmls.size());
+  }
+
+  private void watch() {
+    try {
+      while (true) {
+        awaitDirectory();
+        refreshQuietly();
+        while (awaitChanges()) {
+          refreshQuietly();
+        }
+        System.err.println("Pattern directory " + dir + " was moved or removed; watching it again");
+        refreshQuietly();
+      }
+    } catch (InterruptedException | ClosedWatchServiceException e) {
+      // stopped
+    }
+  }
+
+  /**
+   * Registers the directory with the watch service, polling until it exists. Its parent is
+   * watched as well, so renaming the directory away or replacing it is noticed.
+   */
+  private void awaitDirectory() throws InterruptedException {
+    if (dirKey != null) dirKey.cancel();
+    Path parent = dir.toAbsolutePath().getParent();
+    while (true) {
+      if (Files.isDirectory(dir)) {
+        try {
+          dirKey = dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+              StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+          if (parent != null) {
+            parent.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_DELETE);
+          }
+          return;
+        } catch (NoSuchFileException e) {
+          // removed again before it could be registered
+        } catch (IOException e) {
+          System.err.println("Failed to watch pattern directory " + dir + ": " + e.getMessage());
+        }
+      }
+      Thread.sleep(RETRY_MILLIS);
+    }
+  }
+
+  /**
+   * Waits for changes and drains them; a burst of events (editor saves, bulk copies) is coalesced
+   * into one rebuild. Returns false once the directory must be registered again: its key is
+   * invalid (deleted, unmounted) or the directory's name was moved or recreated in its parent.
+   */
+  private boolean awaitChanges() throws InterruptedException {
+    WatchKey key = watchService.take();
+    boolean watched = true;
+    do {
+      for (WatchEvent<?> event : key.pollEvents()) {
+        if (key != dirKey && dir.getFileName().equals(event.context())) watched = false;
+      }
+      if (!key.reset() && key == dirKey) watched = false;
+    } while ((key = watchService.poll(DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS)) != null);
+    return watched;
+  }
+
+  private void refreshQuietly() {
+    try {
+      refresh();
+    } catch (IOException e) {
+      System.err.println("Failed to refresh pattern catalog: " + e.getMessage());
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (watchService != null) watchService.close();
+  }
+}
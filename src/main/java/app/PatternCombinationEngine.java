@@ -1,6 +1,15 @@
 package app;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
@@ -14,10 +23,16 @@ import java.util.stream.Collectors;
 /**
  * Encodes domain-specific rules describing how individual pattern events should be
  * combined into composite events when multiple patterns are selected together.
+ *
+ * <p>Rules come from a catalog file ({@value #CATALOG_FILE}, next to {@code node_Structure})
+ * or from the built-in defaults. Rule keys are normalised once at load time and indexed by
+ * event, so matching only evaluates rules that reference an event present in the input.
  */
 public final class PatternCombinationEngine {
 
-  private static final List<Rule> RULES = List.of(
+  public static final String CATALOG_FILE = "combinationRules.txt";
+
+  private static final List<Rule> DEFAULT_RULES = List.of(
       rule(
           "creating_Pkt",
           ref("PPacket", "creating_Pkt"),
@@ -49,52 +64,226 @@ public final class PatternCombinationEngine {
           ref("PNDBuffer", "isNot_In_Range_ndBuff"))
   );
 
+  /** Default cap on matching rounds when rule chaining is enabled. */
+  public static final int DEFAULT_MAX_ROUNDS = 64;
+
+  /** Pattern component of the key under which chained rules see composite events ({@code @name}). */
+  private static final String COMPOSITE = "@";
+
+  private final List<Rule> rules;
+  /** Inverted index: event key → ordinals (catalog positions) of the rules referencing it. */
+  private final Map<EventKey, int[]> rulesByEvent;
+  /** Rounds allowed when chaining; 1 means a single pass over the original events. */
+  private final int maxRounds;
+
+  public PatternCombinationEngine() {
+    this(DEFAULT_RULES);
+  }
+
+  private PatternCombinationEngine(List<Rule> rules) {
+    this(rules, buildIndex(rules), 1);
+  }
+
+  private PatternCombinationEngine(List<Rule> rules, Map<EventKey, int[]> rulesByEvent, int maxRounds) {
+    this.rules = List.copyOf(rules);
+    this.rulesByEvent = rulesByEvent;
+    this.maxRounds = maxRounds;
+  }
+
+  /**
+   * Returns an engine with the same rules that chains composites: events produced by one rule
+   * are offered to rules referencing them as {@code @outputName}, round after round, until no
+   * rule fires. Every event, original or composite, stays available to all rules in all later
+   * rounds, as it is in round 1; an event that any rule used is dropped from the output. Each
+   * rule fires at most once per {@link #apply} call, which breaks cycles; exceeding
+   * {@code maxRounds} rounds is reported as an error.
+   */
+  public PatternCombinationEngine withChaining(int maxRounds) {
+    if (maxRounds < 1) {
+      throw new IllegalArgumentException("maxRounds must be at least 1: " + maxRounds);
+    }
+    return new PatternCombinationEngine(rules, rulesByEvent, maxRounds);
+  }
+
+  private static Map<EventKey, int[]> buildIndex(List<Rule> rules) {
+    Map<EventKey, List<Integer>> index = new HashMap<>();
+    for (int i = 0; i < rules.size(); i++) {
+      for (EventKey key : rules.get(i).keys()) {
+        List<Integer> ordinals = index.computeIfAbsent(key, k -> new ArrayList<>());
+        if (ordinals.isEmpty() || ordinals.get(ordinals.size() - 1) != i) ordinals.add(i);
+      }
+    }
+    Map<EventKey, int[]> compiled = new HashMap<>();
+    index.forEach((key, ordinals) -> compiled.put(key, ordinals.stream().mapToInt(Integer::intValue).toArray()));
+    return compiled;
+  }
+
+  /**
+   * Loads the rule catalog at {@code catalog}. Each non-blank, non-comment line has the form
+   * {@code output = Pattern.event + Pattern.event ...}.
+   */
+  public static PatternCombinationEngine fromCatalog(Path catalog) throws IOException {
+    List<Rule> rules = new ArrayList<>();
+    int lineNo = 0;
+    for (String raw : Files.readAllLines(catalog, StandardCharsets.UTF_8)) {
+      lineNo++;
+      int hash = raw.indexOf('#');
+      String line = (hash >= 0 ? raw.substring(0, hash) : raw).trim();
+      if (line.isEmpty()) continue;
+      rules.add(parseRule(line, catalog, lineNo));
+    }
+    return new PatternCombinationEngine(rules);
+  }
+
+  /** Uses {@value #CATALOG_FILE} under {@code projectRoot} when present, else the built-in rules. */
+  public static PatternCombinationEngine forProject(Path projectRoot) throws IOException {
+    Path catalog = projectRoot.resolve(CATALOG_FILE);
+    return Files.isRegularFile(catalog) ? fromCatalog(catalog) : new PatternCombinationEngine();
+  }
+
+  public int ruleCount() {
+    return rules.size();
+  }
+
+  public boolean chaining() {
+    return maxRounds > 1;
+  }
+
+  /**
+   * Output names of the rules that consume one of {@code model}'s events, in catalog order.
+   * Events without a source pattern are attributed to the model, as composition does.
+   */
+  public List<String> rulesFor(PatternModel model) {
+    BitSet matched = new BitSet(rules.size());
+    for (PatternModel.Event event : model.events) {
+      if (event == null) continue;
+      String pattern = event.sourcePattern == null || event.sourcePattern.isBlank() ? model.name : event.sourcePattern;
+      String pat = normalize(pattern);
+      String name = normalize(event.name);
+      if (pat == null || name == null) continue;
+      int[] indices = rulesByEvent.get(new EventKey(pat, name));
+      if (indices == null) continue;
+      for (int index : indices) matched.set(index);
+    }
+    List<String> names = new ArrayList<>(matched.cardinality());
+    for (int i = matched.nextSetBit(0); i >= 0; i = matched.nextSetBit(i + 1)) {
+      names.add(rules.get(i).outputName());
+    }
+    return names;
+  }
+
+  /**
+   * Version string of the effective rule set (rules in catalog order plus the chaining cap);
+   * changes whenever matching could produce a different result.
+   */
+  public String fingerprint() {
+    StringBuilder sb = new StringBuilder().append(maxRounds).append('\n');
+    for (Rule rule : rules) {
+      sb.append(rule.outputName()).append('=');
+      for (EventKey key : rule.keys()) sb.append(key.pattern()).append('.').append(key.event()).append('+');
+      sb.append('\n');
+    }
+    return Hashes.sha256Hex(sb.toString());
+  }
+
   /**
    * Applies the combination rules to the supplied list of events. When a rule matches,
    * the referenced events are merged into a new composite event that replaces the
-   * originals. If a rule cannot be fulfilled (e.g. because one of its constituent
-   * patterns is missing) it is ignored gracefully.
+   * originals. One event may feed several rules, including chained rules in later rounds.
+   * If a rule cannot be fulfilled (e.g. because one of its constituent patterns is
+   * missing) it is ignored gracefully.
    */
   public List<PatternModel.Event> apply(List<PatternModel.Event> events) {
     if (events == null || events.isEmpty()) {
       return events == null ? List.of() : events;
     }
+    long start = System.nanoTime();
+    try {
+      return combine(events);
+    } finally {
+      Metrics.COMBINE.recordSince(start);
+    }
+  }
+
+  private List<PatternModel.Event> combine(List<PatternModel.Event> events) {
 
+    EventKey[] keys = new EventKey[events.size()];
     Map<EventKey, PatternModel.Event> lookup = new LinkedHashMap<>();
-    for (PatternModel.Event event : events) {
+    BitSet candidates = new BitSet(rules.size());
+    for (int i = 0; i < keys.length; i++) {
+      PatternModel.Event event = events.get(i);
       EventKey key = key(event);
-      if (key != null) {
-        lookup.putIfAbsent(key, event);
+      keys[i] = key;
+      if (key != null && lookup.putIfAbsent(key, event) == null) {
+        int[] ordinals = rulesByEvent.get(key);
+        if (ordinals != null) {
+          for (int ordinal : ordinals) candidates.set(ordinal);
+        }
       }
     }
 
-    Set<EventKey> consumed = new LinkedHashSet<>();
-    List<PatternModel.Event> composed = new ArrayList<>();
+    Set<EventKey> consumed = new HashSet<>();
+    Set<PatternModel.Event> consumedComposites = Collections.newSetFromMap(new IdentityHashMap<>());
+    List<PatternModel.Event> composites = new ArrayList<>();
+    BitSet fired = new BitSet(rules.size());
+
+    // Round 1 matches against the original events. With chaining enabled, each further round
+    // only evaluates rules indexed under the composites produced by the previous round; events
+    // used in earlier rounds remain in the lookup so they can still complete those rules.
+    for (int round = 1; !candidates.isEmpty(); round++) {
+      if (round > maxRounds) {
+        throw new IllegalStateException(
+            "Rule chaining did not reach a fixpoint within " + maxRounds + " rounds");
+      }
+      List<EventKey> roundConsumed = new ArrayList<>();
+      Map<EventKey, PatternModel.Event> produced = new LinkedHashMap<>();
 
-    for (Rule rule : RULES) {
-      List<PatternModel.Event> matches = new ArrayList<>();
-      for (EventRef ref : rule.refs()) {
-        PatternModel.Event evt = lookup.get(ref.key());
-        if (evt == null) {
-          matches = null;
-          break;
+      // Candidates are visited in catalog order, so results match a full scan of the rules.
+      for (int r = candidates.nextSetBit(0); r >= 0; r = candidates.nextSetBit(r + 1)) {
+        if (fired.get(r)) continue;
+        Rule rule = rules.get(r);
+        List<PatternModel.Event> matches = new ArrayList<>(rule.keys().size());
+        for (EventKey ref : rule.keys()) {
+          PatternModel.Event evt = lookup.get(ref);
+          if (evt == null) {
+            matches = null;
+            break;
+          }
+          matches.add(evt);
         }
-        matches.add(evt);
+        if (matches == null || matches.isEmpty()) {
+          continue;
+        }
+        fired.set(r);
+        PatternModel.Event composite = merge(rule.outputName(), matches);
+        composites.add(composite);
+        if (rule.outputKey() != null) produced.putIfAbsent(rule.outputKey(), composite);
+        roundConsumed.addAll(rule.keys());
       }
-      if (matches == null || matches.isEmpty()) {
-        continue;
+
+      consumed.addAll(roundConsumed);
+      if (maxRounds == 1) break;
+
+      candidates = new BitSet(rules.size());
+      for (EventKey k : roundConsumed) {
+        if (k.pattern().equals(COMPOSITE)) consumedComposites.add(lookup.get(k));
       }
-      composed.add(merge(rule.outputName(), matches));
-      for (PatternModel.Event evt : matches) {
-        EventKey k = key(evt);
-        if (k != null) consumed.add(k);
+      for (Map.Entry<EventKey, PatternModel.Event> entry : produced.entrySet()) {
+        if (lookup.putIfAbsent(entry.getKey(), entry.getValue()) != null) continue;
+        int[] ordinals = rulesByEvent.get(entry.getKey());
+        if (ordinals != null) {
+          for (int ordinal : ordinals) candidates.set(ordinal);
+        }
       }
     }
 
-    for (PatternModel.Event evt : events) {
-      EventKey k = key(evt);
-      if (k == null || !consumed.contains(k)) {
-        composed.add(evt);
+    List<PatternModel.Event> composed = new ArrayList<>(composites.size() + events.size());
+    for (PatternModel.Event composite : composites) {
+      if (!consumedComposites.contains(composite)) composed.add(composite);
+    }
+    for (int i = 0; i < keys.length; i++) {
+      if (keys[i] == null || !consumed.contains(keys[i])) {
+        composed.add(events.get(i));
       }
     }
 
@@ -180,12 +369,47 @@ public final class PatternCombinationEngine {
     return trimmed.toLowerCase(Locale.ROOT);
   }
 
-  private static Rule rule(String name, EventRef... refs) {
-    return new Rule(name, List.of(refs));
+  private static Rule rule(String name, EventKey... refs) {
+    return new Rule(name, compositeKey(name), List.of(refs));
   }
 
-  private static EventRef ref(String pattern, String event) {
-    return new EventRef(pattern, event);
+  private static EventKey compositeKey(String outputName) {
+    String name = normalize(outputName);
+    return name == null ? null : new EventKey(COMPOSITE, name);
+  }
+
+  private static EventKey ref(String pattern, String event) {
+    return new EventKey(
+        Objects.requireNonNull(normalize(pattern)),
+        Objects.requireNonNull(normalize(event)));
+  }
+
+  private static Rule parseRule(String line, Path catalog, int lineNo) {
+    int eq = line.indexOf('=');
+    String output = eq > 0 ? line.substring(0, eq).trim() : "";
+    if (output.isEmpty()) {
+      throw new IllegalArgumentException(catalog + ":" + lineNo + ": expected '<event> = <Pattern>.<event> + ...'");
+    }
+    List<EventKey> refs = new ArrayList<>();
+    for (String part : line.substring(eq + 1).split("\\+")) {
+      String term = part.trim();
+      if (term.startsWith(COMPOSITE)) {
+        EventKey composite = compositeKey(term.substring(COMPOSITE.length()));
+        if (composite == null) {
+          throw new IllegalArgumentException(catalog + ":" + lineNo + ": invalid composite reference '" + term + "'");
+        }
+        refs.add(composite);
+        continue;
+      }
+      int dot = term.indexOf('.');
+      String pattern = dot > 0 ? normalize(term.substring(0, dot)) : null;
+      String event = dot > 0 ? normalize(term.substring(dot + 1)) : null;
+      if (pattern == null || event == null) {
+        throw new IllegalArgumentException(catalog + ":" + lineNo + ": invalid event reference '" + term + "'");
+      }
+      refs.add(new EventKey(pattern, event));
+    }
+    return new Rule(output, compositeKey(output), List.copyOf(refs));
   }
 
   private static String reconcileType(String current, String incoming) {
@@ -201,8 +425,8 @@ public final class PatternCombinationEngine {
       return existing;
     }
 
-    String normExisting = existing.replaceAll("\\s+", "");
-    String normCandidate = candidate.replaceAll("\\s+", "");
+    String normExisting = EventBTokens.stripWhitespace(existing);
+    String normCandidate = EventBTokens.stripWhitespace(candidate);
 
     if (normCandidate.equalsIgnoreCase(normExisting)) {
       return existing;
@@ -220,52 +444,26 @@ public final class PatternCombinationEngine {
 
   private void pruneUnusedParameters(PatternModel.Event event) {
     if (event.params.isEmpty()) return;
+    // Identifiers come from guards and actions only, so removing parameters leaves them valid.
+    Set<String> used = event.identifiers();
     Iterator<PatternModel.Param> it = event.params.iterator();
     while (it.hasNext()) {
       PatternModel.Param param = it.next();
       if (param.type != null && !param.type.isBlank()) {
         continue;
       }
-      if (isReferenced(param.name, event.guards, event.actions)) {
+      if (param.name != null && used.contains(param.name)) {
         continue;
       }
       it.remove();
     }
   }
 
-  private boolean isReferenced(String name, List<PatternModel.Guard> guards, List<PatternModel.Action> actions) {
-    if (name == null || name.isBlank()) return false;
-    for (PatternModel.Guard guard : guards) {
-      if (guard != null && guard.expr != null && containsToken(guard.expr, name)) {
-        return true;
-      }
-    }
-    for (PatternModel.Action action : actions) {
-      if (action != null && action.assignment != null && containsToken(action.assignment, name)) {
-        return true;
-      }
-    }
-    return false;
-  }
-
-  private boolean containsToken(String text, String token) {
-    if (text == null) return false;
-    String cleaned = text.replaceAll("[^A-Za-z0-9_]", " ");
-    for (String part : cleaned.split("\\s+")) {
-      if (part.equals(token)) return true;
-    }
-    return false;
-  }
-
   private record EventKey(String pattern, String event) {}
 
-  private record EventRef(String pattern, String event) {
-    private EventKey key() {
-      return new EventKey(
-          Objects.requireNonNull(pattern).trim().toLowerCase(Locale.ROOT),
-          Objects.requireNonNull(event).trim().toLowerCase(Locale.ROOT));
-    }
-  }
-
-  private record Rule(String outputName, List<EventRef> refs) {}
+  /**
+   * A composite-event rule; {@code keys} are normalised event references and {@code outputKey}
+   * is the {@code @outputName} key chained rules use to refer to its result.
+   */
+  private record Rule(String outputName, EventKey outputKey, List<EventKey> keys) {}
 }
@@ -5,116 +5,158 @@ import java.util.*;
 /** Combines multiple PatternModel instances into a single merged model. */
 public class PatternComposer {
 
-  private final PatternCombinationEngine combinationEngine = new PatternCombinationEngine();
+  private final PatternCombinationEngine combinationEngine;
+
+  public PatternComposer() {
+    this(new PatternCombinationEngine());
+  }
+
+  public PatternComposer(PatternCombinationEngine combinationEngine) {
+    this.combinationEngine = combinationEngine;
+  }
 
   public PatternModel compose(List<PatternModel> models) {
     if (models == null || models.isEmpty()) {
       throw new IllegalArgumentException("At least one pattern model is required for composition");
     }
 
-    PatternModel result = new PatternModel();
-    result.name = deriveName(models);
-    result.context = mergeContexts(models);
-    mergeVariables(models, result);
-    mergeInvariants(models, result);
-    mergeEvents(models, result);
-    return result;
+    long start = System.nanoTime();
+    try {
+      Accumulator acc = new Accumulator();
+      for (PatternModel model : models) {
+        acc.add(model);
+      }
+      return build(acc);
+    } finally {
+      Metrics.COMPOSE.recordSince(start);
+    }
   }
 
-  private String deriveName(List<PatternModel> models) {
-    for (PatternModel model : models) {
-      if (model != null && model.name != null && !model.name.isBlank()
-          && !"Pattern".equalsIgnoreCase(model.name.trim())) {
-        return model.name.trim() + "_Composite";
-      }
+  /**
+   * Builds the composite for everything added to {@code acc}. The accumulator is not modified,
+   * so it can be extended with further models and finished again.
+   */
+  public PatternModel finish(Accumulator acc) {
+    long start = System.nanoTime();
+    try {
+      return build(acc);
+    } finally {
+      Metrics.COMPOSE.recordSince(start);
     }
-    return "PatternComposite";
   }
 
-  private PatternModel.Context mergeContexts(List<PatternModel> models) {
-    LinkedHashSet<String> sets = new LinkedHashSet<>();
-    LinkedHashSet<String> constants = new LinkedHashSet<>();
-    LinkedHashSet<String> axioms = new LinkedHashSet<>();
+  private PatternModel build(Accumulator acc) {
+    PatternModel result = new PatternModel();
+    result.name = acc.name != null ? acc.name : "PatternComposite";
+    result.context = acc.context();
+    for (PatternModel.Variable var : acc.variables) {
+      PatternModel.Variable copy = new PatternModel.Variable();
+      copy.name = var.name;
+      copy.type = var.type;
+      result.variables.add(copy);
+    }
+    for (String expr : acc.invariants) {
+      PatternModel.Invariant copy = new PatternModel.Invariant();
+      copy.expression = expr;
+      result.invariants.add(copy);
+    }
+    mergeEvents(acc, result);
+    return result;
+  }
 
-    for (PatternModel model : models) {
-      if (model == null || model.context == null) continue;
-      sets.addAll(model.context.sets);
-      constants.addAll(model.context.constants);
-      axioms.addAll(model.context.axioms);
+  /**
+   * Order-preserving merge state for a sequence of pattern models. Contexts, variables,
+   * invariants, initialisation actions and event copies are accumulated per model; rule
+   * application and event de-duplication happen in {@link #finish}.
+   */
+  public static final class Accumulator {
+    private String name;
+    private final LinkedHashSet<String> sets;
+    private final LinkedHashSet<String> constants;
+    private final LinkedHashSet<String> axioms;
+    private final Map<String, String> variableTypes;
+    private final List<PatternModel.Variable> variables;
+    private final LinkedHashSet<String> invariants;
+    private final LinkedHashSet<String> initAssignments;
+    private final List<PatternModel.Event> events;
+
+    public Accumulator() {
+      sets = new LinkedHashSet<>();
+      constants = new LinkedHashSet<>();
+      axioms = new LinkedHashSet<>();
+      variableTypes = new HashMap<>();
+      variables = new ArrayList<>();
+      invariants = new LinkedHashSet<>();
+      initAssignments = new LinkedHashSet<>();
+      events = new ArrayList<>();
     }
 
-    if (sets.isEmpty() && constants.isEmpty() && axioms.isEmpty()) return null;
+    private Accumulator(Accumulator src) {
+      name = src.name;
+      sets = new LinkedHashSet<>(src.sets);
+      constants = new LinkedHashSet<>(src.constants);
+      axioms = new LinkedHashSet<>(src.axioms);
+      variableTypes = new HashMap<>(src.variableTypes);
+      variables = new ArrayList<>(src.variables);
+      invariants = new LinkedHashSet<>(src.invariants);
+      initAssignments = new LinkedHashSet<>(src.initAssignments);
+      events = new ArrayList<>(src.events);
+    }
 
-    PatternModel.Context ctx = new PatternModel.Context();
-    ctx.sets.addAll(sets);
-    ctx.constants.addAll(constants);
-    ctx.axioms.addAll(axioms);
-    return ctx;
-  }
+    /** Independent copy; accumulated elements are never mutated, so they are shared. */
+    public Accumulator copy() {
+      return new Accumulator(this);
+    }
+
+    public void add(PatternModel model) {
+      if (model == null) return;
+      if (name == null && model.name != null && !model.name.isBlank()
+          && !"Pattern".equalsIgnoreCase(model.name.trim())) {
+        name = model.name.trim() + "_Composite";
+      }
+      if (model.context != null) {
+        sets.addAll(model.context.sets);
+        constants.addAll(model.context.constants);
+        axioms.addAll(model.context.axioms);
+      }
+      addVariables(model);
+      for (PatternModel.Invariant inv : model.invariants) {
+        if (inv == null || inv.expression == null) continue;
+        String expr = inv.expression.trim();
+        if (!expr.isEmpty()) invariants.add(expr);
+      }
+      addEvents(model);
+    }
 
-  private void mergeVariables(List<PatternModel> models, PatternModel target) {
-    Map<String, String> seen = new LinkedHashMap<>();
-    for (PatternModel model : models) {
-      if (model == null) continue;
+    private void addVariables(PatternModel model) {
       for (PatternModel.Variable var : model.variables) {
         if (var == null || var.name == null) continue;
-        String name = var.name.trim();
-        if (name.isEmpty()) continue;
+        String varName = var.name.trim();
+        if (varName.isEmpty()) continue;
         String type = var.type;
-        String existing = seen.get(name);
-        if (existing != null) {
-          if (!Objects.equals(existing, type)) {
+        if (variableTypes.containsKey(varName)) {
+          if (!Objects.equals(variableTypes.get(varName), type)) {
             throw new IllegalArgumentException(
-                "Variable name clash with different type: " + name);
+                "Variable name clash with different type: " + varName);
           }
           continue;
         }
-        seen.put(name, type);
+        variableTypes.put(varName, type);
         PatternModel.Variable copy = new PatternModel.Variable();
-        copy.name = name;
+        copy.name = varName;
         copy.type = type;
-        target.variables.add(copy);
-      }
-    }
-  }
-
-  private void mergeInvariants(List<PatternModel> models, PatternModel target) {
-    LinkedHashSet<String> seen = new LinkedHashSet<>();
-    for (PatternModel model : models) {
-      if (model == null) continue;
-      for (PatternModel.Invariant inv : model.invariants) {
-        if (inv == null || inv.expression == null) continue;
-        String expr = inv.expression.trim();
-        if (expr.isEmpty()) continue;
-        if (!seen.add(expr)) continue;
-        PatternModel.Invariant copy = new PatternModel.Invariant();
-        copy.expression = expr;
-        target.invariants.add(copy);
+        variables.add(copy);
       }
     }
-  }
 
-  private void mergeEvents(List<PatternModel> models, PatternModel target) {
-    PatternModel.Event initEvent = new PatternModel.Event();
-    initEvent.name = "Initialisation";
-    initEvent.sourcePattern = "Composite";
-    LinkedHashSet<String> initAssignments = new LinkedHashSet<>();
-
-    List<PatternModel.Event> collectedEvents = new ArrayList<>();
-
-    for (PatternModel model : models) {
-      if (model == null) continue;
+    private void addEvents(PatternModel model) {
       for (PatternModel.Event event : model.events) {
         if (event == null || event.name == null) continue;
         if ("Initialisation".equalsIgnoreCase(event.name)) {
           for (PatternModel.Action act : event.actions) {
             if (act == null || act.assignment == null) continue;
             String assignment = act.assignment.trim();
-            if (assignment.isEmpty()) continue;
-            if (!initAssignments.add(assignment)) continue;
-            PatternModel.Action copy = new PatternModel.Action();
-            copy.assignment = assignment;
-            initEvent.actions.add(copy);
+            if (!assignment.isEmpty()) initAssignments.add(assignment);
           }
           continue;
         }
@@ -123,14 +165,43 @@ public class PatternComposer {
         if (copy.sourcePattern == null || copy.sourcePattern.isBlank()) {
           copy.sourcePattern = model.name;
         }
-        collectedEvents.add(copy);
+        events.add(copy);
       }
     }
 
+    private PatternModel.Context context() {
+      if (sets.isEmpty() && constants.isEmpty() && axioms.isEmpty()) return null;
+
+      PatternModel.Context ctx = new PatternModel.Context();
+      ctx.sets.addAll(sets);
+      ctx.constants.addAll(constants);
+      ctx.axioms.addAll(axioms);
+      return ctx;
+    }
+  }
+
+  private void mergeEvents(Accumulator acc, PatternModel target) {
+    PatternModel.Event initEvent = new PatternModel.Event();
+    initEvent.name = "Initialisation";
+    initEvent.sourcePattern = "Composite";
+    for (String assignment : acc.initAssignments) {
+      PatternModel.Action copy = new PatternModel.Action();
+      copy.assignment = assignment;
+      initEvent.actions.add(copy);
+    }
+
+    // Renaming below mutates events, so work on copies and keep the accumulator reusable.
+    List<PatternModel.Event> collectedEvents = new ArrayList<>(acc.events.size());
+    for (PatternModel.Event event : acc.events) {
+      collectedEvents.add(event.copy());
+    }
+
     List<PatternModel.Event> processedEvents = combinationEngine.apply(collectedEvents);
 
     Map<String, PatternModel.Event> eventsByName = new LinkedHashMap<>();
     Set<String> lowerCaseNames = new HashSet<>();
+    // Next "_N" suffix to try per lower-cased base name, so repeated collisions stay linear.
+    Map<String, Integer> nextSuffix = new HashMap<>();
 
     for (PatternModel.Event event : processedEvents) {
       if (event == null || event.name == null) continue;
@@ -138,23 +209,26 @@ public class PatternComposer {
       if (baseName.isEmpty()) continue;
 
       PatternModel.Event existing = eventsByName.get(baseName);
-      if (existing != null && eventsEquivalent(existing, event)) {
+      if (existing != null && existing.contentEquals(event)) {
         continue;
       }
 
       String candidate = baseName;
       String lower = candidate.toLowerCase(Locale.ROOT);
       if (lowerCaseNames.contains(lower)) {
-        int suffix = 2;
+        String lowerBase = lower;
+        int suffix = nextSuffix.getOrDefault(lowerBase, 2);
         do {
           candidate = baseName + "_" + suffix++;
           lower = candidate.toLowerCase(Locale.ROOT);
         } while (lowerCaseNames.contains(lower));
+        nextSuffix.put(lowerBase, suffix);
       }
       lowerCaseNames.add(lower);
 
       if (!candidate.equals(event.name)) {
         event.name = candidate;
+        event.invalidate();
       }
       eventsByName.put(event.name, event);
     }
@@ -163,7 +237,7 @@ public class PatternComposer {
     target.events.addAll(eventsByName.values());
   }
 
-  private PatternModel.Event copyEvent(PatternModel.Event source) {
+  private static PatternModel.Event copyEvent(PatternModel.Event source) {
     PatternModel.Event copy = new PatternModel.Event();
     copy.name = source.name;
     copy.sourcePattern = source.sourcePattern;
@@ -189,29 +263,4 @@ public class PatternComposer {
     }
     return copy;
   }
-
-  private boolean eventsEquivalent(PatternModel.Event a, PatternModel.Event b) {
-    if (!Objects.equals(a.name, b.name)) return false;
-    if (a.params.size() != b.params.size()) return false;
-    for (int i = 0; i < a.params.size(); i++) {
-      PatternModel.Param ap = a.params.get(i);
-      PatternModel.Param bp = b.params.get(i);
-      if (!Objects.equals(ap.name, bp.name) || !Objects.equals(ap.type, bp.type)) {
-        return false;
-      }
-    }
-    if (a.guards.size() != b.guards.size()) return false;
-    for (int i = 0; i < a.guards.size(); i++) {
-      PatternModel.Guard ag = a.guards.get(i);
-      PatternModel.Guard bg = b.guards.get(i);
-      if (!Objects.equals(ag.expr, bg.expr)) return false;
-    }
-    if (a.actions.size() != b.actions.size()) return false;
-    for (int i = 0; i < a.actions.size(); i++) {
-      PatternModel.Action aa = a.actions.get(i);
-      PatternModel.Action ba = b.actions.get(i);
-      if (!Objects.equals(aa.assignment, ba.assignment)) return false;
-    }
-    return true;
-  }
 }
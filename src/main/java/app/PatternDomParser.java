@@ -9,9 +9,19 @@ import java.nio.file.Path;
 import java.util.*;
 
 /** DOM parser for Pattern XML → PatternModel. */
-public class PatternDomParser {
+public class PatternDomParser implements PatternParser {
 
+  @Override
   public PatternModel parse(Path xmlPath) throws Exception {
+    long start = System.nanoTime();
+    try {
+      return parseDocument(xmlPath);
+    } finally {
+      Metrics.PARSE.recordSince(start);
+    }
+  }
+
+  private PatternModel parseDocument(Path xmlPath) throws Exception {
     DocumentBuilderFactory f = DocumentBuilderFactory.newInstance();
     f.setNamespaceAware(true);
     f.setIgnoringComments(true);
@@ -335,38 +345,48 @@ public class PatternDomParser {
       String multiValues = attr(aEl, "values");
       String text = textOr(aEl, "");
 
-      String assignment = null;
+      String assignment = assignment(singleVar, singleValueAttr, multiVars, multiValues, text);
+      if (assignment == null) continue;
 
-      if (multiVars != null && !multiVars.isBlank()) {
-        String lhs = multiVars.trim();
-        String rhs = (multiValues != null && !multiValues.isBlank()) ? multiValues : (text.isBlank() ? null : text);
-        if (!lhs.isEmpty() && rhs != null && !rhs.isBlank()) {
-          assignment = lhs + " ≔ " + rhs;
-        }
-      } else if (singleVar != null && !singleVar.isBlank()) {
-        String varName = singleVar.trim();
-        if (!varName.isEmpty() && !"skip".equalsIgnoreCase(varName)) {
-          String rhs = (singleValueAttr != null && !singleValueAttr.isBlank()) ? singleValueAttr : text;
-          if (rhs == null || rhs.isBlank()) rhs = "skip";
-          assignment = varName + " ≔ " + rhs;
-        } else {
-          String rhs = (singleValueAttr != null && !singleValueAttr.isBlank()) ? singleValueAttr : text;
-          if (rhs != null && !rhs.isBlank() && !rhs.trim().equalsIgnoreCase("skip")) {
-            assignment = rhs;
-          }
-        }
+      a.assignment = assignment;
+      target.add(a);
+    }
+  }
+
+  /**
+   * Resolves the Event-B assignment described by an {@code <Action>} element, or null when the
+   * action is empty or a plain {@code skip}. Shared with {@link PatternStaxParser}.
+   */
+  static String assignment(String singleVar, String singleValueAttr, String multiVars, String multiValues, String text) {
+    String assignment = null;
+
+    if (multiVars != null && !multiVars.isBlank()) {
+      String lhs = multiVars.trim();
+      String rhs = (multiValues != null && !multiValues.isBlank()) ? multiValues : (text.isBlank() ? null : text);
+      if (!lhs.isEmpty() && rhs != null && !rhs.isBlank()) {
+        assignment = lhs + " ≔ " + rhs;
+      }
+    } else if (singleVar != null && !singleVar.isBlank()) {
+      String varName = singleVar.trim();
+      if (!varName.isEmpty() && !"skip".equalsIgnoreCase(varName)) {
+        String rhs = (singleValueAttr != null && !singleValueAttr.isBlank()) ? singleValueAttr : text;
+        if (rhs == null || rhs.isBlank()) rhs = "skip";
+        assignment = varName + " ≔ " + rhs;
       } else {
         String rhs = (singleValueAttr != null && !singleValueAttr.isBlank()) ? singleValueAttr : text;
-        if (rhs != null && !rhs.isBlank()) {
+        if (rhs != null && !rhs.isBlank() && !rhs.trim().equalsIgnoreCase("skip")) {
           assignment = rhs;
         }
       }
-
-      if (assignment == null || assignment.trim().equalsIgnoreCase("skip")) continue;
-
-      a.assignment = assignment;
-      target.add(a);
+    } else {
+      String rhs = (singleValueAttr != null && !singleValueAttr.isBlank()) ? singleValueAttr : text;
+      if (rhs != null && !rhs.isBlank()) {
+        assignment = rhs;
+      }
     }
+
+    if (assignment == null || assignment.trim().equalsIgnoreCase("skip")) return null;
+    return assignment;
   }
 
   private Element child(Element parent, String tag) {
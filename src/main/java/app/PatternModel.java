@@ -10,6 +10,26 @@ public class PatternModel {
 
   public Context context;
 
+  /** Deep copy of this model; nested lists and elements are not shared with the original. */
+  public PatternModel copy() {
+    PatternModel copy = new PatternModel();
+    copy.name = name;
+    for (Variable v : variables) {
+      Variable c = new Variable();
+      c.name = v.name;
+      c.type = v.type;
+      copy.variables.add(c);
+    }
+    for (Invariant inv : invariants) {
+      Invariant c = new Invariant();
+      c.expression = inv.expression;
+      copy.invariants.add(c);
+    }
+    for (Event e : events) copy.events.add(e.copy());
+    copy.context = context == null ? null : context.copy();
+    return copy;
+  }
+
   public static class Variable {
     public String name;
     public String type;
@@ -22,9 +42,166 @@ public class PatternModel {
   public static class Event {
     public String name;
     public String sourcePattern;
-    public final List<Param> params = new ArrayList<>();
-    public final List<Guard> guards = new ArrayList<>();
-    public final List<Action> actions = new ArrayList<>();
+    /** Content lists; structural changes through them drop the cached derived values. */
+    public final List<Param> params = new ContentList<>();
+    public final List<Guard> guards = new ContentList<>();
+    public final List<Action> actions = new ContentList<>();
+
+    private static final long HASHED = 1L << 32;
+
+    // Derived from guards/actions on first use and kept until invalidate(); the holder is
+    // immutable, so events shared between threads (e.g. by the model caches) publish it safely.
+    private volatile Derived derived;
+    /** {@link #HASHED} plus the hash in the low 32 bits once computed, else 0; one atomic read. */
+    private volatile long structuralHash;
+
+    /** Identifiers referenced by this event's guards and actions (see {@link EventBTokens}). */
+    public Set<String> identifiers() {
+      return derived().identifiers();
+    }
+
+    /** Whitespace-free forms of this event's guard expressions. */
+    public Set<String> normalizedGuards() {
+      return derived().normalizedGuards();
+    }
+
+    /**
+     * Drops values derived from this event's content. Adding, replacing or removing parameters,
+     * guards or actions does this automatically; code that changes the name, or a field of a
+     * parameter, guard or action, of an event that may already have been read must call this
+     * afterwards.
+     */
+    public void invalidate() {
+      if (derived != null) derived = null;
+      if (structuralHash != 0) structuralHash = 0;
+    }
+
+    /** Array-backed list that invalidates the owning event whenever its elements change. */
+    private final class ContentList<T> extends AbstractList<T> implements RandomAccess {
+      private final ArrayList<T> elements = new ArrayList<>();
+
+      @Override
+      public T get(int index) {
+        return elements.get(index);
+      }
+
+      @Override
+      public int size() {
+        return elements.size();
+      }
+
+      @Override
+      public T set(int index, T element) {
+        T previous = elements.set(index, element);
+        invalidate();
+        return previous;
+      }
+
+      @Override
+      public void add(int index, T element) {
+        elements.add(index, element);
+        modCount++;
+        invalidate();
+      }
+
+      @Override
+      public T remove(int index) {
+        T removed = elements.remove(index);
+        modCount++;
+        invalidate();
+        return removed;
+      }
+    }
+
+    private Derived derived() {
+      Derived d = derived;
+      if (d == null) {
+        Set<String> ids = new HashSet<>();
+        Set<String> normalized = new HashSet<>();
+        for (Guard g : guards) {
+          if (g == null || g.expr == null) continue;
+          EventBTokens.identifiers(g.expr, ids);
+          normalized.add(EventBTokens.stripWhitespace(g.expr));
+        }
+        for (Action a : actions) {
+          if (a != null) EventBTokens.identifiers(a.assignment, ids);
+        }
+        d = new Derived(Collections.unmodifiableSet(ids), Collections.unmodifiableSet(normalized));
+        derived = d;
+      }
+      return d;
+    }
+
+    private record Derived(Set<String> identifiers, Set<String> normalizedGuards) {}
+
+    /**
+     * Hash of the event's canonical content (name, parameters, guards, actions), consistent with
+     * field-by-field equality of those parts. Computed on first use and kept until
+     * {@link #invalidate()}.
+     */
+    public int structuralHash() {
+      long cached = structuralHash;
+      if (cached != 0) return (int) cached;
+      int h = Objects.hashCode(name);
+      h = 31 * h + params.size();
+      h = 31 * h + guards.size();
+      h = 31 * h + actions.size();
+      for (Param p : params) {
+        h = 31 * h + (p == null ? 0 : Objects.hashCode(p.name));
+        h = 31 * h + (p == null ? 0 : Objects.hashCode(p.type));
+      }
+      for (Guard g : guards) h = 31 * h + (g == null ? 0 : Objects.hashCode(g.expr));
+      for (Action a : actions) h = 31 * h + (a == null ? 0 : Objects.hashCode(a.assignment));
+      structuralHash = HASHED | (h & 0xffffffffL);
+      return h;
+    }
+
+    /** Field-by-field equality of name, parameters, guards and actions (not sourcePattern). */
+    public boolean contentEquals(Event other) {
+      if (other == null) return false;
+      if (structuralHash() != other.structuralHash()) return false;
+      if (!Objects.equals(name, other.name)) return false;
+      if (params.size() != other.params.size()) return false;
+      for (int i = 0; i < params.size(); i++) {
+        Param ap = params.get(i);
+        Param bp = other.params.get(i);
+        if (!Objects.equals(ap.name, bp.name) || !Objects.equals(ap.type, bp.type)) {
+          return false;
+        }
+      }
+      if (guards.size() != other.guards.size()) return false;
+      for (int i = 0; i < guards.size(); i++) {
+        if (!Objects.equals(guards.get(i).expr, other.guards.get(i).expr)) return false;
+      }
+      if (actions.size() != other.actions.size()) return false;
+      for (int i = 0; i < actions.size(); i++) {
+        if (!Objects.equals(actions.get(i).assignment, other.actions.get(i).assignment)) return false;
+      }
+      return true;
+    }
+
+    public Event copy() {
+      Event copy = new Event();
+      copy.name = name;
+      copy.sourcePattern = sourcePattern;
+      for (Param p : params) {
+        Param c = new Param();
+        c.name = p.name;
+        c.type = p.type;
+        copy.params.add(c);
+      }
+      for (Guard g : guards) {
+        Guard c = new Guard();
+        c.expr = g.expr;
+        copy.guards.add(c);
+      }
+      for (Action a : actions) {
+        Action c = new Action();
+        c.assignment = a.assignment;
+        copy.actions.add(c);
+      }
+      return copy;
+    }
   }
 
   public static class Param {
@@ -44,5 +221,13 @@ public class PatternModel {
     public final List<String> sets = new ArrayList<>();
     public final List<String> constants = new ArrayList<>();
     public final List<String> axioms = new ArrayList<>();
+
+    public Context copy() {
+      Context copy = new Context();
+      copy.sets.addAll(sets);
+      copy.constants.addAll(constants);
+      copy.axioms.addAll(axioms);
+      return copy;
+    }
   }
 }
@@ -0,0 +1,120 @@
+package app;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded LRU cache of parsed pattern models, wrapped around another {@link PatternParser}.
+ *
+ * <p>Models are content-addressed by the SHA-256 of the pattern file. A per-path index of
+ * (mtime, size) → hash lets unchanged files skip hashing; a touched file with identical content
+ * is re-hashed and still hits. Every caller receives its own deep copy of the cached model.
+ */
+public class PatternModelCache implements PatternParser {
+
+  public static final int DEFAULT_CAPACITY = 128;
+
+  private final PatternParser delegate;
+  private final Map<Path, FileStamp> stamps;
+  private final Map<String, PatternModel> models;
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+
+  public PatternModelCache(PatternParser delegate) {
+    this(delegate, DEFAULT_CAPACITY);
+  }
+
+  public PatternModelCache(PatternParser delegate, int capacity) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("Cache capacity must be positive: " + capacity);
+    }
+    this.delegate = delegate;
+    this.stamps = lru(capacity);
+    this.models = lru(capacity);
+  }
+
+  @Override
+  public PatternModel parse(Path xmlPath) throws Exception {
+    Path key = xmlPath.toAbsolutePath().normalize();
+    String hash = fingerprint(key);
+
+    PatternModel cached;
+    synchronized (this) {
+      cached = models.get(hash);
+    }
+    if (cached != null) {
+      hits.incrementAndGet();
+      return cached.copy();
+    }
+
+    // Parse outside the lock; a concurrent miss on the same content just parses twice.
+    misses.incrementAndGet();
+    PatternModel parsed = delegate.parse(key);
+    // The delegate reads the file again. Only cache if it still holds the content hashed above,
+    // so a save during parsing can never file the new model under the old content's hash.
+    if (!hash.equals(Hashes.sha256Hex(key))) {
+      synchronized (this) {
+        stamps.remove(key);
+      }
+      return parsed;
+    }
+    synchronized (this) {
+      models.put(hash, parsed.copy());
+    }
+    return parsed;
+  }
+
+  /**
+   * SHA-256 of the file's content, reusing the recorded hash while its mtime and size are
+   * unchanged.
+   */
+  public String fingerprint(Path xmlPath) throws IOException {
+    Path key = xmlPath.toAbsolutePath().normalize();
+    BasicFileAttributes attrs = Files.readAttributes(key, BasicFileAttributes.class);
+    long modified = attrs.lastModifiedTime().toMillis();
+    long size = attrs.size();
+
+    synchronized (this) {
+      FileStamp stamp = stamps.get(key);
+      if (stamp != null && stamp.modified() == modified && stamp.size() == size) return stamp.hash();
+    }
+    String hash = Hashes.sha256Hex(key);
+    synchronized (this) {
+      stamps.put(key, new FileStamp(modified, size, hash));
+    }
+    return hash;
+  }
+
+  public long hits() {
+    return hits.get();
+  }
+
+  public long misses() {
+    return misses.get();
+  }
+
+  public synchronized int size() {
+    return models.size();
+  }
+
+  public synchronized void clear() {
+    stamps.clear();
+    models.clear();
+  }
+
+  private static <K, V> Map<K, V> lru(int capacity) {
+    return new LinkedHashMap<>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+        return size() > capacity;
+      }
+    };
+  }
+
+  private record FileStamp(long modified, long size, String hash) {}
+}
@@ -0,0 +1,36 @@
+package app;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/** Raised when one or more pattern files of a composition fail to parse; keeps each file's cause. */
+public class PatternParseException extends Exception {
+  private static final long serialVersionUID = 1L;
+
+  /** One failed pattern file and the exception its parse raised. */
+  public record Failure(Path path, Exception cause) {}
+
+  /** Not serialised (Path is not serialisable); the causes survive as cause and suppressed. */
+  private final transient List<Failure> failures;
+
+  public PatternParseException(List<Failure> failures) {
+    super(describe(failures), failures.get(0).cause());
+    this.failures = List.copyOf(failures);
+    failures.stream().skip(1).map(Failure::cause).forEach(this::addSuppressed);
+  }
+
+  /**
+   * Failed pattern files in input order; a path listed twice appears twice. Empty on a
+   * deserialised instance.
+   */
+  public List<Failure> failures() {
+    return failures == null ? List.of() : failures;
+  }
+
+  private static String describe(List<Failure> failures) {
+    return failures.stream()
+        .map(f -> f.path().getFileName() + ": " + f.cause().getMessage())
+        .collect(Collectors.joining("; "));
+  }
+}
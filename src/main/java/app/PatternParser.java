@@ -0,0 +1,19 @@
+package app;
+
+import java.nio.file.Path;
+import java.util.Locale;
+
+/** Reads a Pattern XML file (bundle or legacy root) into a PatternModel. */
+public interface PatternParser {
+  PatternModel parse(Path xmlPath) throws Exception;
+
+  /** Resolves a parser by its CLI name ("dom" or "stax"); returns null for unknown names. */
+  static PatternParser named(String name) {
+    if (name == null) return null;
+    return switch (name.trim().toLowerCase(Locale.ROOT)) {
+      case "dom" -> new PatternDomParser();
+      case "stax" -> new PatternStaxParser();
+      default -> null;
+    };
+  }
+}
@@ -0,0 +1,273 @@
+package app;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.util.*;
+
+/**
+ * Compact binary snapshot of a parsed PatternModel, stored next to its pattern XML as
+ * {@code <file>.xml.snap}.
+ *
+ * <p>Layout (big-endian): magic, format version, source size, mtime and SHA-256, a table of
+ * distinct strings, then the model as counts and string-table indices (-1 for null). Snapshots
+ * are read through a memory-mapped {@link FileChannel}. While the XML keeps its recorded size and
+ * mtime the snapshot is used without reading the XML at all; after a touch the XML is hashed and
+ * the snapshot is still used if the content is unchanged. Stale, truncated or corrupt snapshots
+ * are ignored.
+ */
+public final class PatternSnapshot {
+
+  public static final String EXTENSION = ".snap";
+
+  private static final int MAGIC = 0x45425053; // "EBPS"
+  private static final int VERSION = 3;
+  private static final int HASH_BYTES = 32;
+  private static final int HEADER_BYTES = 24 + HASH_BYTES;
+
+  private PatternSnapshot() {}
+
+  public static Path pathFor(Path xmlPath) {
+    return xmlPath.resolveSibling(xmlPath.getFileName().toString() + EXTENSION);
+  }
+
+  /** Parses {@code xmlPath} with {@code parser} and writes its snapshot; returns the snapshot path. */
+  public static Path compile(PatternParser parser, Path xmlPath) throws Exception {
+    // Stamped and hashed before parsing: if the XML changes in between, the snapshot is merely stale.
+    long modified = Files.getLastModifiedTime(xmlPath).toMillis();
+    byte[] source = Files.readAllBytes(xmlPath);
+    PatternModel model = parser.parse(xmlPath);
+    Path target = pathFor(xmlPath);
+    Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+    Files.write(tmp, encode(model, source.length, modified, Hashes.sha256().digest(source)));
+    try {
+      Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (AtomicMoveNotSupportedException e) {
+      Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+    }
+    return target;
+  }
+
+  /**
+   * Loads the snapshot for {@code xmlPath}, or returns null when it is missing, stale or
+   * unreadable so callers fall back to the XML.
+   */
+  public static PatternModel load(Path xmlPath) throws IOException {
+    Path snapshot = pathFor(xmlPath);
+    BasicFileAttributes source;
+    try {
+      source = Files.readAttributes(xmlPath, BasicFileAttributes.class);
+    } catch (NoSuchFileException e) {
+      return null;
+    }
+    if (!source.isRegularFile() || !Files.isRegularFile(snapshot)) return null;
+
+    try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+      ByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      if (buf.remaining() < HEADER_BYTES || buf.getInt() != MAGIC || buf.getInt() != VERSION) return null;
+      long sourceSize = buf.getLong();
+      long sourceModified = buf.getLong();
+      byte[] sourceHash = new byte[HASH_BYTES];
+      buf.get(sourceHash);
+      if (sourceSize != source.size()) return null;
+      if (sourceModified != source.lastModifiedTime().toMillis()
+          && !MessageDigest.isEqual(sourceHash, Hashes.sha256().digest(Files.readAllBytes(xmlPath)))) {
+        return null;
+      }
+      return decode(buf);
+    } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+      return null;
+    }
+  }
+
+  static byte[] encode(PatternModel model, long sourceSize, long sourceModified, byte[] sourceHash)
+      throws IOException {
+    if (sourceHash.length != HASH_BYTES) {
+      throw new IllegalArgumentException("Expected a SHA-256 source hash");
+    }
+    StringTable table = new StringTable();
+    table.collect(model);
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeLong(sourceSize);
+      out.writeLong(sourceModified);
+      out.write(sourceHash);
+
+      out.writeInt(table.strings.size());
+      for (String s : table.strings) {
+        byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(utf8.length);
+        out.write(utf8);
+      }
+
+      out.writeInt(table.index(model.name));
+      if (model.context == null) {
+        out.writeByte(0);
+      } else {
+        out.writeByte(1);
+        writeStrings(out, table, model.context.sets);
+        writeStrings(out, table, model.context.constants);
+        writeStrings(out, table, model.context.axioms);
+      }
+
+      out.writeInt(model.variables.size());
+      for (PatternModel.Variable v : model.variables) {
+        out.writeInt(table.index(v.name));
+        out.writeInt(table.index(v.type));
+      }
+      out.writeInt(model.invariants.size());
+      for (PatternModel.Invariant inv : model.invariants) {
+        out.writeInt(table.index(inv.expression));
+      }
+      out.writeInt(model.events.size());
+      for (PatternModel.Event e : model.events) {
+        out.writeInt(table.index(e.name));
+        out.writeInt(table.index(e.sourcePattern));
+        out.writeInt(e.params.size());
+        for (PatternModel.Param p : e.params) {
+          out.writeInt(table.index(p.name));
+          out.writeInt(table.index(p.type));
+        }
+        out.writeInt(e.guards.size());
+        for (PatternModel.Guard g : e.guards) out.writeInt(table.index(g.expr));
+        out.writeInt(e.actions.size());
+        for (PatternModel.Action a : e.actions) out.writeInt(table.index(a.assignment));
+      }
+    }
+    return bytes.toByteArray();
+  }
+
+  private static PatternModel decode(ByteBuffer buf) {
+    String[] strings = new String[count(buf, 4)];
+    for (int i = 0; i < strings.length; i++) {
+      byte[] utf8 = new byte[count(buf, 1)];
+      buf.get(utf8);
+      strings[i] = new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    PatternModel model = new PatternModel();
+    model.name = str(buf, strings);
+    if (buf.get() != 0) {
+      model.context = new PatternModel.Context();
+      readStrings(buf, strings, model.context.sets);
+      readStrings(buf, strings, model.context.constants);
+      readStrings(buf, strings, model.context.axioms);
+    }
+
+    for (int i = count(buf, 8); i > 0; i--) {
+      PatternModel.Variable v = new PatternModel.Variable();
+      v.name = str(buf, strings);
+      v.type = str(buf, strings);
+      model.variables.add(v);
+    }
+    for (int i = count(buf, 4); i > 0; i--) {
+      PatternModel.Invariant inv = new PatternModel.Invariant();
+      inv.expression = str(buf, strings);
+      model.invariants.add(inv);
+    }
+    for (int i = count(buf, 20); i > 0; i--) {
+      PatternModel.Event e = new PatternModel.Event();
+      e.name = str(buf, strings);
+      e.sourcePattern = str(buf, strings);
+      for (int j = count(buf, 8); j > 0; j--) {
+        PatternModel.Param p = new PatternModel.Param();
+        p.name = str(buf, strings);
+        p.type = str(buf, strings);
+        e.params.add(p);
+      }
+      for (int j = count(buf, 4); j > 0; j--) {
+        PatternModel.Guard g = new PatternModel.Guard();
+        g.expr = str(buf, strings);
+        e.guards.add(g);
+      }
+      for (int j = count(buf, 4); j > 0; j--) {
+        PatternModel.Action a = new PatternModel.Action();
+        a.assignment = str(buf, strings);
+        e.actions.add(a);
+      }
+      model.events.add(e);
+    }
+    return model;
+  }
+
+  private static void writeStrings(DataOutputStream out, StringTable table, List<String> values) throws IOException {
+    out.writeInt(values.size());
+    for (String v : values) out.writeInt(table.index(v));
+  }
+
+  private static void readStrings(ByteBuffer buf, String[] strings, List<String> target) {
+    for (int i = count(buf, 4); i > 0; i--) target.add(str(buf, strings));
+  }
+
+  /**
+   * Reads an element count and checks that the rest of the buffer can hold that many elements of
+   * at least {@code minBytes} each, so a corrupt count fails here instead of allocating.
+   */
+  private static int count(ByteBuffer buf, int minBytes) {
+    int count = buf.getInt();
+    if (count < 0 || count > buf.remaining() / minBytes) {
+      throw new IllegalArgumentException("Snapshot count out of range: " + count);
+    }
+    return count;
+  }
+
+  private static String str(ByteBuffer buf, String[] strings) {
+    int index = buf.getInt();
+    if (index == -1) return null;
+    if (index < 0 || index >= strings.length) {
+      throw new IllegalArgumentException("Snapshot string index out of range: " + index);
+    }
+    return strings[index];
+  }
+
+  /** Interns every string in the model so repeated names and expressions are stored once. */
+  private static final class StringTable {
+    private final Map<String, Integer> indices = new HashMap<>();
+    private final List<String> strings = new ArrayList<>();
+
+    void collect(PatternModel model) {
+      add(model.name);
+      if (model.context != null) {
+        model.context.sets.forEach(this::add);
+        model.context.constants.forEach(this::add);
+        model.context.axioms.forEach(this::add);
+      }
+      for (PatternModel.Variable v : model.variables) {
+        add(v.name);
+        add(v.type);
+      }
+      for (PatternModel.Invariant inv : model.invariants) add(inv.expression);
+      for (PatternModel.Event e : model.events) {
+        add(e.name);
+        add(e.sourcePattern);
+        for (PatternModel.Param p : e.params) {
+          add(p.name);
+          add(p.type);
+        }
+        for (PatternModel.Guard g : e.guards) add(g.expr);
+        for (PatternModel.Action a : e.actions) add(a.assignment);
+      }
+    }
+
+    private void add(String s) {
+      if (s != null && !indices.containsKey(s)) {
+        indices.put(s, strings.size());
+        strings.add(s);
+      }
+    }
+
+    int index(String s) {
+      return s == null ? -1 : indices.get(s);
+    }
+  }
+}
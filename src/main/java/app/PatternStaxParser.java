@@ -0,0 +1,675 @@
+package app;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Streaming StAX parser for Pattern XML → PatternModel. Produces the same model as
+ * {@link PatternDomParser} in a single forward pass, without materialising a DOM tree.
+ */
+public class PatternStaxParser implements PatternParser {
+
+  private static final XMLInputFactory FACTORY = createFactory();
+
+  @Override
+  public PatternModel parse(Path xmlPath) throws Exception {
+    long start = System.nanoTime();
+    try {
+      return parseDocument(xmlPath);
+    } finally {
+      Metrics.PARSE.recordSince(start);
+    }
+  }
+
+  private PatternModel parseDocument(Path xmlPath) throws Exception {
+    try (InputStream in = new BufferedInputStream(Files.newInputStream(xmlPath))) {
+      XMLStreamReader r = FACTORY.createXMLStreamReader(in);
+      try {
+        if (!nextRoot(r)) throw new IllegalArgumentException("Empty pattern document");
+
+        String tag = tag(r);
+        PatternModel model;
+        if ("PatternBundle".equals(tag)) {
+          model = parseBundle(r);
+        } else if ("Pattern".equals(tag)) {
+          model = parseLegacyPattern(r);
+        } else {
+          throw new IllegalArgumentException("Unsupported root element <" + tag + ">");
+        }
+
+        // Drain the epilogue so malformed trailing content fails like the DOM parser does.
+        while (r.hasNext()) r.next();
+        return model;
+      } finally {
+        r.close();
+      }
+    }
+  }
+
+  private PatternModel parseBundle(XMLStreamReader r) throws XMLStreamException {
+    Map<String, PatternModel.Context> contextsByName = new HashMap<>();
+    BundlePattern pattern = null;
+
+    while (nextChild(r)) {
+      switch (tag(r)) {
+        case "Context" -> {
+          String name = attrOr(r, "name", "Context");
+          contextsByName.put(name, parseContext(r));
+        }
+        case "Pattern" -> {
+          if (pattern == null) {
+            pattern = parseBundlePattern(r);
+          } else {
+            skip(r);
+          }
+        }
+        default -> skip(r);
+      }
+    }
+
+    if (pattern == null) {
+      throw new IllegalArgumentException("Pattern bundle must contain a <Pattern>");
+    }
+
+    PatternModel model = pattern.model();
+
+    // Contexts may follow the pattern in document order, so references resolve at the end.
+    if (pattern.hasContextRef()) {
+      PatternModel.Context referenced = contextsByName.get(pattern.contextRef());
+      if (referenced != null) {
+        model.context = copyContext(referenced);
+      }
+    }
+
+    // If no context matched but there is exactly one context definition, use it by default.
+    if (model.context == null && contextsByName.size() == 1) {
+      model.context = copyContext(contextsByName.values().iterator().next());
+    }
+
+    return model;
+  }
+
+  private BundlePattern parseBundlePattern(XMLStreamReader r) throws XMLStreamException {
+    PatternModel model = new PatternModel();
+    model.name = attrOr(r, "name", model.name);
+
+    boolean hasContextRef = false;
+    String contextRef = null;
+    boolean seenVariables = false;
+    boolean seenInvariants = false;
+    PatternModel.Event initEvt = null;
+    List<PatternModel.Event> events = null;
+
+    while (nextChild(r)) {
+      String tag = tag(r);
+      if ("ContextRef".equals(tag) && !hasContextRef) {
+        hasContextRef = true;
+        contextRef = attr(r, "name");
+        skip(r);
+      } else if ("Variables".equals(tag) && !seenVariables) {
+        seenVariables = true;
+        while (nextChild(r)) {
+          if ("Variable".equals(tag(r))) {
+            PatternModel.Variable v = new PatternModel.Variable();
+            v.name = attrOr(r, "name", "v" + (model.variables.size() + 1));
+            v.type = attrOr(r, "type", "UNSPECIFIED");
+            model.variables.add(v);
+          }
+          skip(r);
+        }
+      } else if ("Invariants".equals(tag) && !seenInvariants) {
+        seenInvariants = true;
+        while (nextChild(r)) {
+          if ("Invariant".equals(tag(r))) {
+            model.invariants.add(parseInvariant(r));
+          } else {
+            skip(r);
+          }
+        }
+      } else if ("Initialisation".equals(tag) && initEvt == null) {
+        initEvt = new PatternModel.Event();
+        initEvt.name = "Initialisation";
+        initEvt.sourcePattern = model.name;
+        parseActions(r, initEvt.actions);
+      } else if ("Events".equals(tag) && events == null) {
+        events = new ArrayList<>();
+        while (nextChild(r)) {
+          if ("Event".equals(tag(r))) {
+            events.add(parseBundleEvent(r, model.name));
+          } else {
+            skip(r);
+          }
+        }
+      } else {
+        skip(r);
+      }
+    }
+
+    if (initEvt != null) {
+      model.events.add(initEvt);
+    }
+    if (events != null) {
+      // Unnamed events are numbered after the initialisation, as in the DOM parser.
+      int offset = model.events.size();
+      for (int i = 0; i < events.size(); i++) {
+        PatternModel.Event evt = events.get(i);
+        if (evt.name == null) evt.name = "event" + (offset + i + 1);
+      }
+      model.events.addAll(events);
+    }
+
+    // Ensure there is at least an initialisation event
+    if (model.events.stream().noneMatch(e -> "Initialisation".equalsIgnoreCase(e.name))) {
+      PatternModel.Event init = new PatternModel.Event();
+      init.name = "Initialisation";
+      init.sourcePattern = model.name;
+      model.events.add(0, init);
+    }
+
+    return new BundlePattern(model, hasContextRef, contextRef);
+  }
+
+  private PatternModel.Event parseBundleEvent(XMLStreamReader r, String sourcePattern) throws XMLStreamException {
+    PatternModel.Event evt = new PatternModel.Event();
+    evt.name = attrOr(r, "name", null);
+    evt.sourcePattern = sourcePattern;
+
+    boolean seenParams = false;
+    boolean seenGuards = false;
+    boolean seenActions = false;
+    while (nextChild(r)) {
+      String tag = tag(r);
+      if ("Parameters".equals(tag) && !seenParams) {
+        seenParams = true;
+        while (nextChild(r)) {
+          if ("Param".equals(tag(r))) {
+            evt.params.add(parseParam(r, evt.params.size()));
+          }
+          skip(r);
+        }
+      } else if ("Guards".equals(tag) && !seenGuards) {
+        seenGuards = true;
+        while (nextChild(r)) {
+          if ("Guard".equals(tag(r))) {
+            evt.guards.add(parseGuard(r));
+          } else {
+            skip(r);
+          }
+        }
+      } else if ("Actions".equals(tag) && !seenActions) {
+        seenActions = true;
+        parseActions(r, evt.actions);
+      } else {
+        skip(r);
+      }
+    }
+    return evt;
+  }
+
+  private PatternModel parseLegacyPattern(XMLStreamReader r) throws XMLStreamException {
+    PatternModel model = new PatternModel();
+    String rootName = attr(r, "name");
+    if (rootName != null) model.name = rootName;
+
+    boolean seenContext = false;
+    boolean seenVariables = false;
+    boolean seenInvariants = false;
+    boolean seenEvents = false;
+
+    while (nextChild(r)) {
+      String tag = tag(r);
+      if ("Context".equals(tag) && !seenContext) {
+        seenContext = true;
+        model.context = parseContext(r);
+      } else if ("Variables".equals(tag) && !seenVariables) {
+        seenVariables = true;
+        walk(r, descendants("Variable", (w, el) -> {
+          PatternModel.Variable v = new PatternModel.Variable();
+          v.name = attrOr(el, "name", "v" + (model.variables.size() + 1));
+          v.type = attrOr(el, "type", "UNSPECIFIED");
+          model.variables.add(v);
+        }));
+      } else if ("Invariants".equals(tag) && !seenInvariants) {
+        seenInvariants = true;
+        walk(r, descendants("Invariant", (w, el) -> {
+          PatternModel.Invariant inv = new PatternModel.Invariant();
+          model.invariants.add(inv);
+          expression(w, el, value -> inv.expression = value);
+        }));
+      } else if ("Events".equals(tag) && !seenEvents) {
+        seenEvents = true;
+        walk(r, descendants("Event", (w, el) -> w.open(new LegacyEventScope(el, model))));
+      } else {
+        skip(r);
+      }
+    }
+
+    return model;
+  }
+
+  /**
+   * One legacy {@code <Event>}: added to the model when it starts, so events keep pre-order
+   * even when nested; its first Parameters, Guards and Actions children fill it in as they pass.
+   */
+  private static final class LegacyEventScope extends Scope {
+    private final PatternModel.Event evt = new PatternModel.Event();
+    private boolean seenParams;
+    private boolean seenGuards;
+    private boolean seenActions;
+
+    LegacyEventScope(XMLStreamReader r, PatternModel model) {
+      evt.name = attrOr(r, "name", "event" + (model.events.size() + 1));
+      evt.sourcePattern = model.name;
+      model.events.add(evt);
+    }
+
+    @Override
+    void start(Walk w, XMLStreamReader r, int level) {
+      if (level != 1) return;
+      String tag = tag(r);
+      if ("Parameters".equals(tag) && !seenParams) {
+        seenParams = true;
+        w.open(descendants("Param", (pw, el) -> evt.params.add(parseParam(el, evt.params.size()))));
+      } else if ("Guards".equals(tag) && !seenGuards) {
+        seenGuards = true;
+        w.open(descendants("Guard", (gw, el) -> {
+          PatternModel.Guard g = new PatternModel.Guard();
+          evt.guards.add(g);
+          expression(gw, el, value -> g.expr = value);
+        }));
+      } else if ("Actions".equals(tag) && !seenActions) {
+        seenActions = true;
+        w.open(new ActionsScope(evt.actions));
+      }
+    }
+  }
+
+  /** Direct {@code <Action>} children of an Actions element, as in {@link #parseActions}. */
+  private static final class ActionsScope extends Scope {
+    private final List<PatternModel.Action> target;
+
+    ActionsScope(List<PatternModel.Action> target) {
+      this.target = target;
+    }
+
+    @Override
+    void start(Walk w, XMLStreamReader r, int level) {
+      if (level != 1 || !"Action".equals(tag(r))) return;
+      String singleVar = attr(r, "var");
+      String singleValueAttr = attr(r, "value");
+      String multiVars = attr(r, "vars");
+      String multiValues = attr(r, "values");
+      w.open(new TextScope(text -> {
+        String assignment = PatternDomParser.assignment(
+            singleVar, singleValueAttr, multiVars, multiValues, textOr(text, ""));
+        if (assignment == null) return;
+        PatternModel.Action a = new PatternModel.Action();
+        a.assignment = assignment;
+        target.add(a);
+      }));
+    }
+  }
+
+  private PatternModel.Context parseContext(XMLStreamReader r) throws XMLStreamException {
+    // Grouped (<Sets><Set/></Sets>) entries win; bare children are the fallback.
+    List<String> groupedSets = new ArrayList<>();
+    List<String> bareSets = new ArrayList<>();
+    List<String> groupedConstants = new ArrayList<>();
+    List<String> bareConstants = new ArrayList<>();
+    List<String> groupedAxioms = new ArrayList<>();
+    List<String> bareAxioms = new ArrayList<>();
+    boolean seenSets = false;
+    boolean seenConstants = false;
+    boolean seenAxioms = false;
+
+    while (nextChild(r)) {
+      switch (tag(r)) {
+        case "Sets" -> {
+          if (seenSets) {
+            skip(r);
+            break;
+          }
+          seenSets = true;
+          walk(r, descendants("Set",
+              (w, el) -> groupedSets.add(attrOr(el, "name", "SET" + (groupedSets.size() + 1)))));
+        }
+        case "Set" -> {
+          bareSets.add(attrOr(r, "name", "SET" + (bareSets.size() + 1)));
+          skip(r);
+        }
+        case "Constants" -> {
+          if (seenConstants) {
+            skip(r);
+            break;
+          }
+          seenConstants = true;
+          walk(r, descendants("Constant",
+              (w, el) -> groupedConstants.add(attrOr(el, "name", "CONST" + (groupedConstants.size() + 1)))));
+        }
+        case "Constant" -> {
+          bareConstants.add(attrOr(r, "name", "CONST" + (bareConstants.size() + 1)));
+          skip(r);
+        }
+        case "Axioms" -> {
+          if (seenAxioms) {
+            skip(r);
+            break;
+          }
+          seenAxioms = true;
+          walk(r, descendants("Axiom", (w, el) -> {
+            int index = groupedAxioms.size();
+            groupedAxioms.add(null);
+            expression(w, el, value -> groupedAxioms.set(index, value));
+          }));
+        }
+        case "Axiom" -> bareAxioms.add(expressionOr(r, "TRUE"));
+        default -> skip(r);
+      }
+    }
+
+    PatternModel.Context ctx = new PatternModel.Context();
+    ctx.sets.addAll(groupedSets.isEmpty() ? bareSets : groupedSets);
+    ctx.constants.addAll(groupedConstants.isEmpty() ? bareConstants : groupedConstants);
+    ctx.axioms.addAll(groupedAxioms.isEmpty() ? bareAxioms : groupedAxioms);
+    return ctx;
+  }
+
+  private static PatternModel.Param parseParam(XMLStreamReader r, int index) {
+    PatternModel.Param p = new PatternModel.Param();
+    p.name = attrOr(r, "name", "p" + (index + 1));
+    String typeAttr = attr(r, "type");
+    p.type = (typeAttr != null && !typeAttr.isEmpty()) ? typeAttr : null;
+    return p;
+  }
+
+  private PatternModel.Guard parseGuard(XMLStreamReader r) throws XMLStreamException {
+    PatternModel.Guard g = new PatternModel.Guard();
+    g.expr = expressionOr(r, "TRUE");
+    return g;
+  }
+
+  private PatternModel.Invariant parseInvariant(XMLStreamReader r) throws XMLStreamException {
+    PatternModel.Invariant inv = new PatternModel.Invariant();
+    inv.expression = expressionOr(r, "TRUE");
+    return inv;
+  }
+
+  private void parseActions(XMLStreamReader r, List<PatternModel.Action> target) throws XMLStreamException {
+    while (nextChild(r)) {
+      if (!"Action".equals(tag(r))) {
+        skip(r);
+        continue;
+      }
+      String singleVar = attr(r, "var");
+      String singleValueAttr = attr(r, "value");
+      String multiVars = attr(r, "vars");
+      String multiValues = attr(r, "values");
+      String text = textOr(text(r), "");
+
+      String assignment = PatternDomParser.assignment(singleVar, singleValueAttr, multiVars, multiValues, text);
+      if (assignment == null) continue;
+
+      PatternModel.Action a = new PatternModel.Action();
+      a.assignment = assignment;
+      target.add(a);
+    }
+  }
+
+  /** Reads the {@code expression} attribute, falling back to the element text; consumes the element. */
+  private static String expressionOr(XMLStreamReader r, String def) throws XMLStreamException {
+    String expression = attr(r, "expression");
+    String text = textOr(text(r), def);
+    return (expression == null || expression.isBlank()) ? text : expression;
+  }
+
+  /**
+   * Walk counterpart of {@link #expressionOr} with default {@code TRUE}: delivers the
+   * {@code expression} attribute at once, or the element text when the element ends.
+   */
+  private static void expression(Walk w, XMLStreamReader r, Consumer<String> target) {
+    String expression = attr(r, "expression");
+    if (expression != null && !expression.isBlank()) {
+      target.accept(expression);
+    } else {
+      w.open(new TextScope(text -> target.accept(textOr(text, "TRUE"))));
+    }
+  }
+
+  private PatternModel.Context copyContext(PatternModel.Context src) {
+    PatternModel.Context copy = new PatternModel.Context();
+    copy.sets.addAll(src.sets);
+    copy.constants.addAll(src.constants);
+    copy.axioms.addAll(src.axioms);
+    return copy;
+  }
+
+  // --- cursor helpers: element handlers start on a START_ELEMENT and leave the reader on its END_ELEMENT.
+
+  private static boolean nextRoot(XMLStreamReader r) throws XMLStreamException {
+    while (r.hasNext()) {
+      if (r.next() == XMLStreamConstants.START_ELEMENT) return true;
+    }
+    return false;
+  }
+
+  /** Advances to the next child element of the current element; false once its end tag is reached. */
+  private static boolean nextChild(XMLStreamReader r) throws XMLStreamException {
+    while (r.hasNext()) {
+      int event = r.next();
+      if (event == XMLStreamConstants.START_ELEMENT) return true;
+      if (event == XMLStreamConstants.END_ELEMENT) return false;
+    }
+    return false;
+  }
+
+  /**
+   * Runs {@code scope} over the current element in one forward pass, leaving the reader on its
+   * end tag. See {@link Walk}.
+   */
+  private static void walk(XMLStreamReader r, Scope scope) throws XMLStreamException {
+    new Walk(r).run(scope);
+  }
+
+  /**
+   * Opens {@code match} for every element named {@code tag} below the current element, in
+   * document order ({@code getElementsByTagName} semantics), including matches nested inside
+   * other matches.
+   */
+  private static Scope descendants(String tag, Match match) {
+    return new Scope() {
+      @Override
+      void start(Walk w, XMLStreamReader r, int level) {
+        if (tag.equals(tag(r))) match.start(w, r);
+      }
+    };
+  }
+
+  @FunctionalInterface
+  private interface Match {
+    /** Called on the matched START_ELEMENT; must not move the reader. */
+    void start(Walk w, XMLStreamReader r);
+  }
+
+  /**
+   * Listener for the elements below the one it was opened on. Scopes only observe the reader;
+   * the {@link Walk} drives it, so matches nested in matches are seen in the same pass.
+   */
+  private abstract static class Scope {
+    private int depth;
+    private int textStart;
+
+    /** A descendant element has started; {@code level} is 1 for direct children. */
+    void start(Walk w, XMLStreamReader r, int level) {}
+
+    /** The element this scope was opened on has ended. */
+    void end(Walk w) {}
+
+    boolean wantsText() {
+      return false;
+    }
+  }
+
+  /** Hands the element's text content ({@code getTextContent}) to {@code done} at its end tag. */
+  private static final class TextScope extends Scope {
+    private final Consumer<String> done;
+
+    TextScope(Consumer<String> done) {
+      this.done = done;
+    }
+
+    @Override
+    void end(Walk w) {
+      done.accept(w.textSince(this));
+    }
+
+    @Override
+    boolean wantsText() {
+      return true;
+    }
+  }
+
+  /**
+   * Single forward pass over one element. Open scopes form a stack by depth: each start tag is
+   * offered to every open scope, outermost first, so handlers see matches in pre-order; each end
+   * tag closes the scopes opened at that depth. An element's text is contiguous in document
+   * order, so text scopes share one buffer and keep only their start offset.
+   */
+  private static final class Walk {
+    private final XMLStreamReader r;
+    private final List<Scope> open = new ArrayList<>();
+    private final StringBuilder text = new StringBuilder();
+    private int textScopes;
+    private int depth;
+
+    Walk(XMLStreamReader r) {
+      this.r = r;
+    }
+
+    /** Opens {@code scope} on the element that just started. */
+    void open(Scope scope) {
+      scope.depth = depth;
+      scope.textStart = text.length();
+      if (scope.wantsText()) textScopes++;
+      open.add(scope);
+    }
+
+    String textSince(Scope scope) {
+      return text.substring(scope.textStart);
+    }
+
+    void run(Scope root) throws XMLStreamException {
+      open(root);
+      while (r.hasNext()) {
+        switch (r.next()) {
+          case XMLStreamConstants.START_ELEMENT -> {
+            depth++;
+            // Scopes opened for this element only see its descendants.
+            for (int i = 0, n = open.size(); i < n; i++) {
+              Scope scope = open.get(i);
+              scope.start(this, r, depth - scope.depth);
+            }
+          }
+          case XMLStreamConstants.END_ELEMENT -> {
+            while (!open.isEmpty() && open.get(open.size() - 1).depth == depth) {
+              Scope scope = open.remove(open.size() - 1);
+              scope.end(this);
+              if (scope.wantsText()) textScopes--;
+            }
+            if (textScopes == 0) text.setLength(0);
+            if (depth-- == 0) return;
+          }
+          case XMLStreamConstants.CHARACTERS, XMLStreamConstants.CDATA, XMLStreamConstants.SPACE -> {
+            if (textScopes > 0) text.append(r.getTextCharacters(), r.getTextStart(), r.getTextLength());
+          }
+          default -> {
+            // comments and processing instructions carry no model data
+          }
+        }
+      }
+    }
+  }
+
+  private static void skip(XMLStreamReader r) throws XMLStreamException {
+    int depth = 0;
+    while (r.hasNext()) {
+      int event = r.next();
+      if (event == XMLStreamConstants.START_ELEMENT) {
+        depth++;
+      } else if (event == XMLStreamConstants.END_ELEMENT) {
+        if (depth == 0) return;
+        depth--;
+      }
+    }
+  }
+
+  /** Concatenated text of the current element and its descendants ({@code getTextContent}). */
+  private static String text(XMLStreamReader r) throws XMLStreamException {
+    StringBuilder sb = null;
+    int depth = 0;
+    while (r.hasNext()) {
+      int event = r.next();
+      switch (event) {
+        case XMLStreamConstants.START_ELEMENT -> depth++;
+        case XMLStreamConstants.END_ELEMENT -> {
+          if (depth == 0) return sb == null ? "" : sb.toString();
+          depth--;
+        }
+        case XMLStreamConstants.CHARACTERS, XMLStreamConstants.CDATA, XMLStreamConstants.SPACE -> {
+          if (sb == null) sb = new StringBuilder();
+          sb.append(r.getTextCharacters(), r.getTextStart(), r.getTextLength());
+        }
+        default -> {
+          // comments and processing instructions do not contribute text
+        }
+      }
+    }
+    return sb == null ? "" : sb.toString();
+  }
+
+  private static String tag(XMLStreamReader r) {
+    String prefix = r.getPrefix();
+    String local = r.getLocalName();
+    return (prefix == null || prefix.isEmpty()) ? local : prefix + ":" + local;
+  }
+
+  private static String attrOr(XMLStreamReader r, String name, String def) {
+    String v = attr(r, name);
+    return (v == null || v.isBlank()) ? def : v;
+  }
+
+  private static String attr(XMLStreamReader r, String name) {
+    for (int i = 0; i < r.getAttributeCount(); i++) {
+      String prefix = r.getAttributePrefix(i);
+      String local = r.getAttributeLocalName(i);
+      String qualified = (prefix == null || prefix.isEmpty()) ? local : prefix + ":" + local;
+      if (name.equals(qualified)) return r.getAttributeValue(i).trim();
+    }
+    return null;
+  }
+
+  private static String textOr(String t, String def) {
+    if (t == null) return def;
+    t = t.trim();
+    return t.isEmpty() ? def : t;
+  }
+
+  private static XMLInputFactory createFactory() {
+    XMLInputFactory f = XMLInputFactory.newInstance();
+    f.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+    f.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+    // Pattern files come from request-selected paths: no DTDs, no external entities.
+    f.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+    f.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+    return f;
+  }
+
+  private record BundlePattern(PatternModel model, boolean hasContextRef, String contextRef) {}
+}
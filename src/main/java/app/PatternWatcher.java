@@ -0,0 +1,153 @@
+package app;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps generated projects in sync with their pattern files. One {@link WatchService}
+ * registration per input directory; change events are coalesced until the directory has been
+ * quiet for the debounce window, then only the projects depending on the changed files are
+ * regenerated (incrementally, so a touch without a content change writes nothing). If the watch
+ * service overflows, every job is regenerated; a directory that stops being watchable (deleted,
+ * unmounted) is registered again once it exists, and its jobs are regenerated then.
+ */
+public class PatternWatcher implements AutoCloseable {
+
+  public static final long DEFAULT_DEBOUNCE_MILLIS = 25;
+  private static final long RETRY_MILLIS = 1000;
+
+  private final GenerationService service;
+  private final long debounceMillis;
+  private final PrintStream log;
+  private final WatchService watchService;
+  private final Map<WatchKey, Path> directories = new HashMap<>();
+  private final Map<Path, List<BatchGenerator.Job>> jobsByInput = new HashMap<>();
+  /** Directories whose key was invalidated, waiting to be registered again. */
+  private final Set<Path> unwatched = new LinkedHashSet<>();
+
+  public PatternWatcher(GenerationService service, List<BatchGenerator.Job> jobs, long debounceMillis,
+                        PrintStream log) throws IOException {
+    if (debounceMillis < 0) {
+      throw new IllegalArgumentException("Debounce must not be negative: " + debounceMillis);
+    }
+    this.service = service;
+    this.debounceMillis = debounceMillis;
+    this.log = log;
+    this.watchService = FileSystems.getDefault().newWatchService();
+    Set<Path> dirs = new LinkedHashSet<>();
+    for (BatchGenerator.Job job : jobs) {
+      for (Path xml : job.patternXmls()) {
+        Path input = xml.toAbsolutePath().normalize();
+        jobsByInput.computeIfAbsent(input, k -> new ArrayList<>()).add(job);
+        dirs.add(input.getParent());
+      }
+    }
+    for (Path dir : dirs) register(dir);
+  }
+
+  private void register(Path dir) throws IOException {
+    WatchKey key = dir.register(watchService,
+        StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+    directories.put(key, dir);
+  }
+
+  /** Blocks, regenerating affected projects after each burst of changes, until interrupted or closed. */
+  public void run() throws InterruptedException {
+    try {
+      while (true) {
+        Set<Path> changed = new LinkedHashSet<>();
+        WatchKey key = unwatched.isEmpty()
+            ? watchService.take()
+            : watchService.poll(RETRY_MILLIS, TimeUnit.MILLISECONDS);
+        if (key != null) drain(key, changed);
+        // Editors often save in several steps (truncate, write, rename); wait until they settle.
+        while ((key = watchService.poll(debounceMillis, TimeUnit.MILLISECONDS)) != null) {
+          drain(key, changed);
+        }
+        rewatch(changed);
+        regenerate(changed);
+      }
+    } catch (ClosedWatchServiceException e) {
+      // closed from another thread: stop watching
+    }
+  }
+
+  private void drain(WatchKey key, Set<Path> changed) {
+    Path dir = directories.get(key);
+    for (WatchEvent<?> event : key.pollEvents()) {
+      if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+        // Events were lost, so any input may have changed.
+        changed.addAll(jobsByInput.keySet());
+      } else if (dir != null && event.context() instanceof Path name) {
+        Path file = dir.resolve(name);
+        if (jobsByInput.containsKey(file)) changed.add(file);
+      }
+    }
+    if (!key.reset()) {
+      directories.remove(key);
+      if (dir != null && unwatched.add(dir)) {
+        log.println("Pattern directory " + dir + " was moved or removed; watching it again");
+      }
+    }
+  }
+
+  /** Registers unwatched directories that exist again; their inputs count as changed. */
+  private void rewatch(Set<Path> changed) {
+    for (Iterator<Path> it = unwatched.iterator(); it.hasNext(); ) {
+      Path dir = it.next();
+      if (!Files.isDirectory(dir)) continue;
+      try {
+        register(dir);
+      } catch (NoSuchFileException e) {
+        continue; // removed again before it could be registered
+      } catch (IOException e) {
+        log.println("Failed to watch pattern directory " + dir + ": " + e.getMessage());
+        continue;
+      }
+      it.remove();
+      for (Path input : jobsByInput.keySet()) {
+        if (dir.equals(input.getParent())) changed.add(input);
+      }
+    }
+  }
+
+  private void regenerate(Set<Path> changed) {
+    Set<BatchGenerator.Job> affected = new LinkedHashSet<>();
+    for (Path file : changed) {
+      affected.addAll(jobsByInput.get(file));
+    }
+    for (BatchGenerator.Job job : affected) {
+      long start = System.nanoTime();
+      try {
+        boolean generated = service.generateIncremental(job.patternXmls(), job.projectName(), ReqSpec.empty());
+        log.println(String.format(Locale.ROOT, "%s %s in %.1f ms",
+            generated ? "Regenerated" : "Unchanged", job.projectName(), (System.nanoTime() - start) / 1e6));
+      } catch (Exception e) {
+        log.println("Failed to regenerate " + job.projectName() + ": " + e.getMessage());
+      }
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    watchService.close();
+  }
+}
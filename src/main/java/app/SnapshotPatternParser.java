@@ -0,0 +1,18 @@
+package app;
+
+import java.nio.file.Path;
+
+/** Loads a fresh compiled {@link PatternSnapshot} when one exists, otherwise parses the XML. */
+public class SnapshotPatternParser implements PatternParser {
+  private final PatternParser xmlParser;
+
+  public SnapshotPatternParser(PatternParser xmlParser) {
+    this.xmlParser = xmlParser;
+  }
+
+  @Override
+  public PatternModel parse(Path xmlPath) throws Exception {
+    PatternModel snapshot = PatternSnapshot.load(xmlPath);
+    return snapshot != null ? snapshot : xmlParser.parse(xmlPath);
+  }
+}
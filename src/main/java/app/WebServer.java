@@ -4,10 +4,14 @@ import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpServer;
 
+import java.io.BufferedWriter;
 import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.net.InetSocketAddress;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
@@ -17,72 +21,258 @@ import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
 import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
 /** Simple embedded HTTP server providing a UI for composing pattern bundles. */
 public class WebServer {
 
-  private static final Pattern QUOTED_VALUE = Pattern.compile("\"([^\"]+)\"");
-  private static final Pattern PROJECT_NAME =
-      Pattern.compile("\"projectName\"\\s*:\\s*\"([^\"]+)\"");
+  private static final ExecutorService REFINEMENT_POOL = Executors.newFixedThreadPool(
+      Math.max(1, Runtime.getRuntime().availableProcessors()), GenerationService.daemonThreads("refinement"));
+  private static final long SSE_KEEPALIVE_MILLIS = 15_000;
+  /** Largest request body read by the JSON endpoints; larger ones get 413. */
+  static final int MAX_REQUEST_BYTES = 1 << 20;
 
   private final GenerationService generationService;
   private final Path projectRoot;
   private final Path nodeStructureDir;
+  private final boolean persistArtifacts;
+  private final Limits limits;
+  private final Semaphore generationPermits;
+  private final Semaphore eventStreams;
+  private final PatternCatalog catalog;
+  private final GenerationJobs jobs;
+
+  /**
+   * Request handling limits. Handlers run on {@code handlerThreads} platform threads, or on
+   * virtual threads when {@code virtualThreads} is set and the runtime supports them (Java 21+).
+   * At most {@code maxGenerations} generation requests and jobs run at once; further requests
+   * are rejected with 429 and a {@code Retry-After} of {@code retryAfterSeconds}, jobs wait.
+   * Job event streams hold their handler thread until the job ends, so at most half of the
+   * {@code handlerThreads} may stream at once; more get 429 as well.
+   */
+  public record Limits(boolean virtualThreads, int handlerThreads, int maxGenerations, int retryAfterSeconds) {
+    public Limits {
+      if (handlerThreads < 1 || maxGenerations < 1) {
+        throw new IllegalArgumentException("Handler threads and max generations must be positive");
+      }
+      if (retryAfterSeconds < 0) {
+        throw new IllegalArgumentException("Retry-After seconds must not be negative: " + retryAfterSeconds);
+      }
+    }
+
+    /** Half the handler threads, leaving the rest for short requests; may be 0. */
+    public int maxEventStreams() {
+      return handlerThreads / 2;
+    }
+
+    public static Limits defaults() {
+      int cpus = Runtime.getRuntime().availableProcessors();
+      return new Limits(false, Math.max(8, 4 * cpus), Math.max(1, cpus), 1);
+    }
+  }
 
   public WebServer(Path projectRoot, GenerationService generationService) {
+    this(projectRoot, generationService, true);
+  }
+
+  /** With {@code persistArtifacts} false, generated files are only returned in the download. */
+  public WebServer(Path projectRoot, GenerationService generationService, boolean persistArtifacts) {
+    this(projectRoot, generationService, persistArtifacts, Limits.defaults());
+  }
+
+  public WebServer(Path projectRoot, GenerationService generationService, boolean persistArtifacts, Limits limits) {
     this.projectRoot = projectRoot;
     this.generationService = generationService;
     this.nodeStructureDir = projectRoot.resolve("node_Structure");
+    this.persistArtifacts = persistArtifacts;
+    this.limits = limits;
+    this.generationPermits = new Semaphore(limits.maxGenerations());
+    this.eventStreams = new Semaphore(limits.maxEventStreams());
+    this.catalog = new PatternCatalog(
+        nodeStructureDir, generationService.modelCache(), generationService.combinationEngine());
+    this.jobs = new GenerationJobs(generationService, REFINEMENT_POOL, generationPermits, limits.maxGenerations(),
+        persistArtifacts, GenerationJobs.DEFAULT_CAPACITY, GenerationJobs.DEFAULT_TTL_MILLIS);
   }
 
   public void start(int port) throws IOException {
+    catalog.start();
     HttpServer server = HttpServer.create(new InetSocketAddress(port), 0);
-    server.createContext("/", new StaticHandler("web/index.html", "text/html"));
-    server.createContext("/static/app.js", new StaticHandler("web/app.js", "text/javascript"));
-    server.createContext("/static/style.css", new StaticHandler("web/style.css", "text/css"));
-    server.createContext("/api/patterns", this::handleListPatterns);
-    server.createContext("/api/generate", this::handleGenerate);
-    server.setExecutor(Executors.newCachedThreadPool());
+    route(server, "/", new StaticHandler("web/index.html", "text/html"));
+    route(server, "/static/app.js", new StaticHandler("web/app.js", "text/javascript"));
+    route(server, "/static/style.css", new StaticHandler("web/style.css", "text/css"));
+    route(server, "/api/patterns", this::handleListPatterns);
+    route(server, "/api/generate", exchange -> withGenerationPermit(exchange, this::handleGenerate));
+    // Event streams last as long as their job, so they get their own latency and in-flight series.
+    Metrics.Route jobRequests = Metrics.route("/api/jobs");
+    Metrics.Route jobEvents = Metrics.route("/api/jobs/events");
+    server.createContext("/api/jobs", exchange -> timed(
+        exchange.getRequestURI().getPath().endsWith("/events") ? jobEvents : jobRequests, exchange, this::handleJobs));
+    route(server, "/api/preview", exchange -> withGenerationPermit(exchange, this::handlePreview));
+    route(server, "/metrics", this::handleMetrics);
+    server.setExecutor(handlerExecutor());
     server.start();
   }
 
-  private void handleListPatterns(HttpExchange exchange) throws IOException {
-    if (!"GET".equalsIgnoreCase(exchange.getRequestMethod())) {
+  /** Registers {@code handler} under {@code path}, counting its requests in {@link Metrics}. */
+  private static void route(HttpServer server, String path, HttpHandler handler) {
+    Metrics.Route metrics = Metrics.route(path);
+    server.createContext(path, exchange -> timed(metrics, exchange, handler));
+  }
+
+  private static void timed(Metrics.Route metrics, HttpExchange exchange, HttpHandler handler) throws IOException {
+    long start = metrics.started();
+    try {
+      handler.handle(exchange);
+    } finally {
+      metrics.finished(start, exchange.getResponseCode());
+    }
+  }
+
+  /**
+   * Virtual threads when requested and available, otherwise a fixed pool; either way the number
+   * of concurrent generations is bounded by {@link #generationPermits}, not by the executor.
+   */
+  private ExecutorService handlerExecutor() {
+    if (limits.virtualThreads()) {
+      try {
+        // Looked up reflectively so the server still builds and runs on Java 17.
+        return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+      } catch (ReflectiveOperationException e) {
+        System.err.println("Virtual threads not available on this runtime; using "
+            + limits.handlerThreads() + " platform threads");
+      }
+    }
+    return Executors.newFixedThreadPool(limits.handlerThreads(), GenerationService.daemonThreads("http"));
+  }
+
+  /**
+   * Runs {@code handler} for a POST if a generation permit is free, otherwise answers 429. Other
+   * methods get 405 without taking a permit.
+   */
+  private void withGenerationPermit(HttpExchange exchange, HttpHandler handler) throws IOException {
+    if (!"POST".equalsIgnoreCase(exchange.getRequestMethod())) {
+      exchange.getRequestBody().close();
       send(exchange, 405, "Method Not Allowed", "text/plain");
       return;
     }
-    if (!Files.isDirectory(nodeStructureDir)) {
-      send(exchange, 200, "[]", "application/json");
+    if (!generationPermits.tryAcquire()) {
+      exchange.getRequestBody().close();
+      exchange.getResponseHeaders().set("Retry-After", Integer.toString(limits.retryAfterSeconds()));
+      send(exchange, 429, "Too many concurrent generation requests, retry later", "text/plain");
       return;
     }
-    var builder = new StringBuilder();
-    builder.append("[");
-    boolean first = true;
-    try (var stream = Files.list(nodeStructureDir)) {
-      for (Path path : stream.filter(p -> p.getFileName().toString().endsWith(".xml")).sorted().toList()) {
-        if (!first) builder.append(",");
-        builder.append("\"").append(path.getFileName().toString()).append("\"");
-        first = false;
-      }
+    try {
+      handler.handle(exchange);
+    } finally {
+      generationPermits.release();
     }
-    builder.append("]");
-    send(exchange, 200, builder.toString(), "application/json");
   }
 
-  private void handleGenerate(HttpExchange exchange) throws IOException {
-    if (!"POST".equalsIgnoreCase(exchange.getRequestMethod())) {
+  /** Prometheus text exposition of {@link Metrics} plus cache, job and permit gauges. */
+  private void handleMetrics(HttpExchange exchange) throws IOException {
+    if (!"GET".equalsIgnoreCase(exchange.getRequestMethod())) {
       send(exchange, 405, "Method Not Allowed", "text/plain");
       return;
     }
-    String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
-    GenerateRequest request = parseGenerateRequest(body);
+    StringBuilder out = new StringBuilder(16384);
+    Metrics.writeTo(out);
+
+    PatternModelCache models = generationService.modelCache();
+    CompositionCache compositions = generationService.compositionCache();
+    EventBMapper mapper = generationService.mapper();
+    Metrics.header(out, "eventb_cache_hits_total", "counter", "Cache lookups that were served from the cache.");
+    Metrics.sample(out, "eventb_cache_hits_total", "cache=\"model\"", models.hits());
+    Metrics.sample(out, "eventb_cache_hits_total", "cache=\"composition\"", compositions.hits());
+    Metrics.sample(out, "eventb_cache_hits_total", "cache=\"composition_prefix\"", compositions.prefixHits());
+    Metrics.sample(out, "eventb_cache_hits_total", "cache=\"fragment\"", mapper.fragmentHits());
+    Metrics.header(out, "eventb_cache_misses_total", "counter", "Cache lookups that had to compute the value.");
+    Metrics.sample(out, "eventb_cache_misses_total", "cache=\"model\"", models.misses());
+    Metrics.sample(out, "eventb_cache_misses_total", "cache=\"composition\"", compositions.misses());
+    Metrics.sample(out, "eventb_cache_misses_total", "cache=\"fragment\"", mapper.fragmentMisses());
+    Metrics.header(out, "eventb_cache_hit_ratio", "gauge", "Share of lookups served from the cache since start.");
+    Metrics.sample(out, "eventb_cache_hit_ratio", "cache=\"model\"", ratio(models.hits(), models.misses()));
+    Metrics.sample(out, "eventb_cache_hit_ratio", "cache=\"composition\"",
+        ratio(compositions.hits() + compositions.prefixHits(), compositions.misses()));
+    Metrics.sample(out, "eventb_cache_hit_ratio", "cache=\"fragment\"",
+        ratio(mapper.fragmentHits(), mapper.fragmentMisses()));
+    Metrics.header(out, "eventb_cache_entries", "gauge", "Entries currently held per cache.");
+    Metrics.sample(out, "eventb_cache_entries", "cache=\"model\"", models.size());
+    Metrics.sample(out, "eventb_cache_entries", "cache=\"composition\"", compositions.size());
+
+    EventBWriter writer = generationService.writer();
+    Metrics.header(out, "eventb_files_written_total", "counter", "Artifact files written to the workspace.");
+    Metrics.sample(out, "eventb_files_written_total", "", writer.filesWritten());
+    Metrics.header(out, "eventb_files_unchanged_total", "counter", "Artifact writes skipped as unchanged.");
+    Metrics.sample(out, "eventb_files_unchanged_total", "", writer.filesSkipped());
+
+    Metrics.header(out, "eventb_generations_in_flight", "gauge", "Generation permits currently held.");
+    Metrics.sample(out, "eventb_generations_in_flight", "",
+        limits.maxGenerations() - generationPermits.availablePermits());
+    Metrics.header(out, "eventb_generations_max", "gauge", "Generation permits available in total.");
+    Metrics.sample(out, "eventb_generations_max", "", limits.maxGenerations());
+    Metrics.header(out, "eventb_jobs_stored", "gauge", "Generation jobs held in the job store.");
+    Metrics.sample(out, "eventb_jobs_stored", "", jobs.size());
+    Metrics.header(out, "eventb_job_event_streams", "gauge", "Job event streams currently open.");
+    Metrics.sample(out, "eventb_job_event_streams", "",
+        limits.maxEventStreams() - eventStreams.availablePermits());
+    Metrics.header(out, "eventb_patterns", "gauge", "Patterns in the catalog.");
+    Metrics.sample(out, "eventb_patterns", "", catalog.snapshot().patternCount());
+
+    send(exchange, 200, out.toString(), "text/plain; version=0.0.4");
+  }
+
+  private static double ratio(long hits, long misses) {
+    long total = hits + misses;
+    return total == 0 ? Double.NaN : (double) hits / total;
+  }
+
+  private void handleListPatterns(HttpExchange exchange) throws IOException {
+    if (!"GET".equalsIgnoreCase(exchange.getRequestMethod())) {
+      send(exchange, 405, "Method Not Allowed", "text/plain");
+      return;
+    }
+    PatternCatalog.Snapshot snapshot = catalog.snapshot();
+    exchange.getResponseHeaders().set("ETag", snapshot.etag());
+    exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+    if (etagMatches(exchange.getRequestHeaders().getFirst("If-None-Match"), snapshot.etag())) {
+      exchange.sendResponseHeaders(304, -1);
+      return;
+    }
+    exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+    exchange.sendResponseHeaders(200, snapshot.json().length);
+    try (OutputStream os = exchange.getResponseBody()) {
+      os.write(snapshot.json());
+    }
+  }
+
+  /** If-None-Match uses weak comparison: W/ prefixes are ignored. */
+  private static boolean etagMatches(String ifNoneMatch, String tag) {
+    if (ifNoneMatch == null) return false;
+    for (String candidate : ifNoneMatch.split(",")) {
+      String value = candidate.trim();
+      if (value.equals("*")) return true;
+      if (value.startsWith("W/")) value = value.substring(2);
+      if (value.equals(tag)) return true;
+    }
+    return false;
+  }
+
+  private void handleGenerate(HttpExchange exchange) throws IOException {
+    GenerateRequest request = readRequest(exchange);
+    if (request == null) return;
     List<List<String>> refinements = request.refinements();
     if (refinements.isEmpty()) {
       send(exchange, 400, "No refinements provided", "text/plain");
@@ -100,73 +290,55 @@ public class WebServer {
       projectName = defaultProjectName();
     }
 
-    List<Path> generatedFilePaths = new ArrayList<>();
-    List<String> fileSummaries = new ArrayList<>();
-    int refinementIndex = 1;
+    List<List<Path>> refinementPaths = resolveRefinements(exchange, refinements);
+    if (refinementPaths == null) return;
+    List<EventBIR> outputs = composeRefinements(exchange, refinementPaths);
+    if (outputs == null) return;
 
-    for (List<String> fileNames : refinements) {
-      if (fileNames == null || fileNames.isEmpty()) {
-        send(exchange, 400, "Each refinement must include at least one pattern", "text/plain");
-        return;
-      }
-
-      List<Path> patternPaths = new ArrayList<>();
-      for (String fileName : fileNames) {
-        Path path = nodeStructureDir.resolve(fileName).normalize();
-        if (!path.startsWith(nodeStructureDir) || !Files.exists(path)) {
-          send(exchange, 404, "Pattern not found: " + fileName, "text/plain");
-          return;
-        }
-        patternPaths.add(path);
-      }
-
-      EventBIR ir;
+    // Written before answering, so the advertised project path always holds these files.
+    if (persistArtifacts) {
       try {
-        ir = generationService.compose(patternPaths, refinementIndex);
-      } catch (Exception e) {
-        send(exchange, 500, "Failed to generate: " + e.getMessage(), "text/plain");
-        return;
-      }
-
-      Path machineDir;
-      try {
-        machineDir = generationService.writeToProject(projectName, ir);
+        generationService.writeToProject(projectName, outputs);
       } catch (IOException e) {
         send(exchange, 500, "Failed to write files: " + e.getMessage(), "text/plain");
         return;
       }
-
-      Path ctxPath = machineDir.resolve(ir.ctxName() + ".ctx");
-      Path machPath = machineDir.resolve(ir.machName() + ".bcm");
-      generatedFilePaths.add(ctxPath);
-      generatedFilePaths.add(machPath);
-      fileSummaries.add(relativizeForResponse(workspace, ctxPath));
-      fileSummaries.add(relativizeForResponse(workspace, machPath));
-
-      refinementIndex++;
     }
+    sendArtifacts(exchange, workspace, projectName, outputs, persistArtifacts);
+  }
 
+  /**
+   * Answers with the rendered refinements: a streamed ZIP, or file metadata in JSON result mode.
+   * Headers describe where the files live in the workspace when {@code persisted} is set.
+   */
+  private void sendArtifacts(HttpExchange exchange, Path workspace, String projectName, List<EventBIR> outputs,
+                             boolean persisted) throws IOException {
     Path projectDir = workspace.resolve(projectName);
+    List<String> fileSummaries = new ArrayList<>();
+    for (EventBIR ir : outputs) {
+      Path machineDir = projectDir.resolve("machine" + ir.refinement());
+      fileSummaries.add(relativizeForResponse(workspace, machineDir.resolve(ir.ctxName() + ".ctx")));
+      fileSummaries.add(relativizeForResponse(workspace, machineDir.resolve(ir.machName() + ".bcm")));
+    }
+
     String projectPath = relativizeForResponse(projectRoot, projectDir);
     if (projectPath.isEmpty()) {
       projectPath = relativizeForResponse(workspace, projectDir);
     }
-    byte[] archive;
-    try {
-      archive = zipGeneratedFiles(projectName, generatedFilePaths, workspace);
-    } catch (IOException e) {
-      send(exchange, 500, "Failed to assemble download: " + e.getMessage(), "text/plain");
-      return;
-    }
 
     String downloadName = projectName.isBlank() ? "eventb-artifacts.zip" : projectName + ".zip";
-    String safeProjectPath = sanitizeHeaderValue(projectPath);
+    String safeProjectPath = persisted ? sanitizeHeaderValue(projectPath) : "";
     String safeProjectName = sanitizeHeaderValue(projectName);
     String filesHeader = fileSummaries.stream()
         .map(this::sanitizeHeaderValue)
         .filter(s -> !s.isEmpty())
         .collect(Collectors.joining(";"));
 
+    if (wantsJson(exchange)) {
+      sendGenerateResult(exchange, projectName, persisted ? projectPath : null, fileSummaries, outputs);
+      return;
+    }
+
     exchange.getResponseHeaders().set("Content-Type", "application/zip");
     exchange.getResponseHeaders().set("Content-Disposition",
         "attachment; filename=\"" + downloadName + "\"");
@@ -180,12 +352,313 @@ public class WebServer {
       exchange.getResponseHeaders().set("X-Generated-Files", filesHeader);
     }
 
-    exchange.sendResponseHeaders(200, archive.length);
+    // Length 0 selects chunked encoding: the archive is streamed as it is deflated.
+    exchange.sendResponseHeaders(200, 0);
     try (OutputStream os = exchange.getResponseBody()) {
-      os.write(archive);
+      writeZip(os, projectName, outputs);
     }
   }
 
+  /**
+   * Job API: {@code POST /api/jobs} queues a generation and returns its id at once;
+   * {@code GET /api/jobs/{id}} reports its state, {@code .../events} streams progress as
+   * Server-Sent Events and {@code .../artifact} downloads the result like /api/generate.
+   */
+  private void handleJobs(HttpExchange exchange) throws IOException {
+    String rest = exchange.getRequestURI().getPath().substring("/api/jobs".length());
+    String method = exchange.getRequestMethod();
+    if (rest.isEmpty() || rest.equals("/")) {
+      if (!"POST".equalsIgnoreCase(method)) {
+        send(exchange, 405, "Method Not Allowed", "text/plain");
+        return;
+      }
+      handleSubmitJob(exchange);
+      return;
+    }
+    String[] parts = rest.split("/", -1);
+    // parts[0] is the empty segment before the leading slash: ["", id] or ["", id, resource]
+    if (!parts[0].isEmpty() || parts.length > 3) {
+      send(exchange, 404, "Not Found", "text/plain");
+      return;
+    }
+    if (!"GET".equalsIgnoreCase(method)) {
+      send(exchange, 405, "Method Not Allowed", "text/plain");
+      return;
+    }
+    GenerationJobs.Job job = jobs.get(parts[1]);
+    if (job == null) {
+      send(exchange, 404, "Unknown or expired job: " + parts[1], "text/plain");
+      return;
+    }
+    String resource = parts.length == 3 ? parts[2] : "";
+    switch (resource) {
+      case "" -> sendJobStatus(exchange, job);
+      case "events" -> streamJobEvents(exchange, job);
+      case "artifact" -> sendJobArtifact(exchange, job);
+      default -> send(exchange, 404, "Not Found", "text/plain");
+    }
+  }
+
+  private void handleSubmitJob(HttpExchange exchange) throws IOException {
+    GenerateRequest request = readRequest(exchange);
+    if (request == null) return;
+    if (request.refinements().isEmpty()) {
+      send(exchange, 400, "No refinements provided", "text/plain");
+      return;
+    }
+    if (generationService.workspaceRoot() == null) {
+      send(exchange, 500, "Workspace not configured", "text/plain");
+      return;
+    }
+    String projectName = sanitizeProjectName(request.projectName());
+    if (projectName.isBlank()) {
+      projectName = defaultProjectName();
+    }
+    List<List<Path>> refinementPaths = resolveRefinements(exchange, request.refinements());
+    if (refinementPaths == null) return;
+
+    GenerationJobs.Job job;
+    try {
+      job = jobs.submit(projectName, refinementPaths);
+    } catch (RejectedExecutionException e) {
+      exchange.getResponseHeaders().set("Retry-After", Integer.toString(limits.retryAfterSeconds()));
+      send(exchange, 429, "Too many generation jobs, retry later", "text/plain");
+      return;
+    }
+    String base = "/api/jobs/" + job.id();
+    StringBuilder sb = new StringBuilder();
+    new JsonWriter(sb).beginObject()
+        .name("id").value(job.id())
+        .name("projectName").value(job.projectName())
+        .name("status").value(base)
+        .name("events").value(base + "/events")
+        .name("artifact").value(base + "/artifact")
+        .endObject();
+    exchange.getResponseHeaders().set("Location", base);
+    send(exchange, 202, sb.toString(), "application/json");
+  }
+
+  private void sendJobStatus(HttpExchange exchange, GenerationJobs.Job job) throws IOException {
+    StringBuilder sb = new StringBuilder();
+    JsonWriter json = new JsonWriter(sb).beginObject()
+        .name("id").value(job.id())
+        .name("projectName").value(job.projectName())
+        .name("state").value(job.state().name().toLowerCase(Locale.ROOT))
+        .name("refinements").value(job.refinementCount());
+    if (job.error() != null) json.name("error").value(job.error());
+    json.endObject();
+    exchange.getResponseHeaders().set("Cache-Control", "no-store");
+    send(exchange, 200, sb.toString(), "application/json");
+  }
+
+  /**
+   * Streams the job's events as SSE until it finishes, resuming after {@code Last-Event-ID}.
+   * Comment lines keep idle connections open through proxies. Answers 429 when too many streams
+   * are open; clients can poll the job status instead.
+   */
+  private void streamJobEvents(HttpExchange exchange, GenerationJobs.Job job) throws IOException {
+    if (!eventStreams.tryAcquire()) {
+      exchange.getResponseHeaders().set("Retry-After", Integer.toString(limits.retryAfterSeconds()));
+      send(exchange, 429, "Too many open event streams, poll the job status instead", "text/plain");
+      return;
+    }
+    try {
+      streamEvents(exchange, job);
+    } finally {
+      eventStreams.release();
+    }
+  }
+
+  private void streamEvents(HttpExchange exchange, GenerationJobs.Job job) throws IOException {
+    long lastId = 0;
+    String lastEventId = exchange.getRequestHeaders().getFirst("Last-Event-ID");
+    if (lastEventId != null) {
+      try {
+        lastId = Long.parseLong(lastEventId.trim());
+      } catch (NumberFormatException ignored) {
+        // replay from the start
+      }
+    }
+    var headers = exchange.getResponseHeaders();
+    headers.set("Content-Type", "text/event-stream; charset=utf-8");
+    headers.set("Cache-Control", "no-store");
+    headers.set("X-Accel-Buffering", "no");
+    exchange.sendResponseHeaders(200, 0);
+    try (OutputStream os = exchange.getResponseBody()) {
+      while (true) {
+        List<GenerationJobs.Event> events = job.eventsAfter(lastId, SSE_KEEPALIVE_MILLIS);
+        if (events.isEmpty()) {
+          if (job.finished()) break;
+          os.write(": keep-alive\n\n".getBytes(StandardCharsets.UTF_8));
+        }
+        for (GenerationJobs.Event event : events) {
+          String frame = "id: " + event.id() + "\nevent: " + event.type() + "\ndata: " + event.data() + "\n\n";
+          os.write(frame.getBytes(StandardCharsets.UTF_8));
+          lastId = event.id();
+        }
+        os.flush();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (IOException e) {
+      // client went away; the job carries on
+    }
+  }
+
+  private void sendJobArtifact(HttpExchange exchange, GenerationJobs.Job job) throws IOException {
+    switch (job.state()) {
+      case SUCCEEDED -> sendArtifacts(
+          exchange, generationService.workspaceRoot(), job.projectName(), job.outputs(), persistArtifacts);
+      case FAILED -> send(exchange, 409, "Job failed: " + job.error(), "text/plain");
+      default -> send(exchange, 409, "Job not finished", "text/plain");
+    }
+  }
+
+  /**
+   * Dry run of /api/generate: composes the refinements in memory and returns the context and
+   * machine text as JSON. Nothing is written to the workspace. Like {@link #handleGenerate}, it
+   * only sees POSTs; {@link #withGenerationPermit} answers other methods.
+   */
+  private void handlePreview(HttpExchange exchange) throws IOException {
+    GenerateRequest request = readRequest(exchange);
+    if (request == null) return;
+    if (request.refinements().isEmpty()) {
+      send(exchange, 400, "No refinements provided", "text/plain");
+      return;
+    }
+    List<List<Path>> refinementPaths = resolveRefinements(exchange, request.refinements());
+    if (refinementPaths == null) return;
+    List<EventBIR> outputs = composeRefinements(exchange, refinementPaths);
+    if (outputs == null) return;
+
+    exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+    exchange.getResponseHeaders().set("Cache-Control", "no-store");
+    exchange.sendResponseHeaders(200, 0);
+    try (Writer out = new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8))) {
+      JsonWriter json = new JsonWriter(out);
+      json.beginObject();
+      json.name("refinements").beginArray();
+      for (EventBIR ir : outputs) {
+        json.beginObject();
+        json.name("refinement").value(ir.refinement());
+        json.name("contextName").value(ir.ctxName());
+        json.name("machineName").value(ir.machName());
+        json.name("context").value(ir.ctxText());
+        json.name("machine").value(ir.machineText());
+        json.endObject();
+      }
+      json.endArray();
+      json.endObject();
+    }
+  }
+
+  /**
+   * Maps each refinement's pattern names to files in the pattern directory. Answers 400/404 and
+   * returns null if a refinement is empty or names an unknown pattern.
+   */
+  private List<List<Path>> resolveRefinements(HttpExchange exchange, List<List<String>> refinements)
+      throws IOException {
+    List<List<Path>> refinementPaths = new ArrayList<>();
+    for (List<String> fileNames : refinements) {
+      if (fileNames == null || fileNames.isEmpty()) {
+        send(exchange, 400, "Each refinement must include at least one pattern", "text/plain");
+        return null;
+      }
+
+      List<Path> patternPaths = new ArrayList<>();
+      for (String fileName : fileNames) {
+        Path path = nodeStructureDir.resolve(fileName).normalize();
+        if (!path.startsWith(nodeStructureDir) || !Files.exists(path)) {
+          send(exchange, 404, "Pattern not found: " + fileName, "text/plain");
+          return null;
+        }
+        patternPaths.add(path);
+      }
+      refinementPaths.add(patternPaths);
+    }
+    return refinementPaths;
+  }
+
+  /**
+   * Composes and maps the refinements concurrently, in memory, returning them in refinement
+   * order. The first failure cancels the rest, answers 500 and returns null.
+   */
+  private List<EventBIR> composeRefinements(HttpExchange exchange, List<List<Path>> refinementPaths)
+      throws IOException {
+    CompletionService<EventBIR> completion = new ExecutorCompletionService<>(REFINEMENT_POOL);
+    List<Future<EventBIR>> futures = new ArrayList<>(refinementPaths.size());
+    for (int i = 0; i < refinementPaths.size(); i++) {
+      List<Path> patternPaths = refinementPaths.get(i);
+      int refinementIndex = i + 1;
+      futures.add(completion.submit(() -> generationService.compose(patternPaths, refinementIndex)));
+    }
+    List<EventBIR> outputs = new ArrayList<>(futures.size());
+    try {
+      // Wait in completion order so the first failure cancels the rest without waiting for them.
+      for (int i = 0; i < futures.size(); i++) {
+        completion.take().get();
+      }
+      for (Future<EventBIR> future : futures) {
+        outputs.add(future.get());
+      }
+    } catch (ExecutionException e) {
+      futures.forEach(f -> f.cancel(true));
+      send(exchange, 500, "Failed to generate: " + e.getCause().getMessage(), "text/plain");
+      return null;
+    } catch (InterruptedException e) {
+      futures.forEach(f -> f.cancel(true));
+      Thread.currentThread().interrupt();
+      send(exchange, 500, "Generation interrupted", "text/plain");
+      return null;
+    }
+    return outputs;
+  }
+
+  /** JSON result mode: {@code ?format=json} or an Accept header preferring JSON over ZIP. */
+  private static boolean wantsJson(HttpExchange exchange) {
+    String query = exchange.getRequestURI().getRawQuery();
+    if (query != null) {
+      for (String param : query.split("&")) {
+        if (param.equals("format=json")) return true;
+        if (param.equals("format=zip")) return false;
+      }
+    }
+    String accept = exchange.getRequestHeaders().getFirst("Accept");
+    return accept != null && accept.contains("application/json") && !accept.contains("application/zip");
+  }
+
+  /** Metadata of the generated files instead of the archive; paths as in X-Generated-Files. */
+  private void sendGenerateResult(HttpExchange exchange, String projectName, String projectPath,
+                                  List<String> fileSummaries, List<EventBIR> outputs) throws IOException {
+    exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+    exchange.sendResponseHeaders(200, 0);
+    try (Writer out = new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8))) {
+      JsonWriter json = new JsonWriter(out);
+      json.beginObject();
+      json.name("projectName").value(projectName);
+      if (projectPath != null) json.name("projectPath").value(projectPath);
+      json.name("files").beginArray();
+      int summary = 0;
+      for (EventBIR ir : outputs) {
+        writeFileEntry(json, ir.refinement(), "context", ir.ctxName(), fileSummaries.get(summary++), ir.ctxText());
+        writeFileEntry(json, ir.refinement(), "machine", ir.machName(), fileSummaries.get(summary++), ir.machineText());
+      }
+      json.endArray();
+      json.endObject();
+    }
+  }
+
+  private static void writeFileEntry(JsonWriter json, int refinement, String kind, String name, String path,
+                                     String text) throws IOException {
+    json.beginObject();
+    json.name("refinement").value(refinement);
+    json.name("kind").value(kind);
+    json.name("name").value(name);
+    json.name("path").value(path);
+    json.name("bytes").value(text.getBytes(StandardCharsets.UTF_8).length);
+    json.endObject();
+  }
+
   private String defaultProjectName() {
     return "web-session-" + DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss")
         .format(LocalDateTime.now());
@@ -207,43 +680,42 @@ public class WebServer {
     return absoluteTarget.toString().replace('\\', '/');
   }
 
-  private byte[] zipGeneratedFiles(String projectName, List<Path> generatedFiles, Path workspace)
-      throws IOException {
+  /** Streams a ZIP of the rendered artifacts, laid out as in the workspace, under a root folder. */
+  private void writeZip(OutputStream out, String projectName, List<EventBIR> outputs) throws IOException {
+    long start = System.nanoTime();
+    try {
+      writeZipEntries(out, projectName, outputs);
+    } finally {
+      Metrics.ZIP.recordSince(start);
+    }
+  }
+
+  private void writeZipEntries(OutputStream out, String projectName, List<EventBIR> outputs) throws IOException {
     String root = projectName.isBlank() ? "eventb-artifacts" : projectName;
     root = root.replaceAll("[/\\\\]+", "-");
     if (root.isBlank()) root = "eventb-artifacts";
     if (!root.endsWith("/")) root = root + "/";
 
-    Path absWorkspace = workspace != null ? workspace.toAbsolutePath().normalize() : null;
+    ZipOutputStream zip = new ZipOutputStream(out, StandardCharsets.UTF_8);
+    Set<String> addedDirs = new HashSet<>();
+    zip.putNextEntry(new ZipEntry(root));
+    zip.closeEntry();
+    addedDirs.add(root);
 
-    try (ByteArrayOutputStream baos = new ByteArrayOutputStream();
-         ZipOutputStream zip = new ZipOutputStream(baos, StandardCharsets.UTF_8)) {
-      Set<String> addedDirs = new HashSet<>();
-      zip.putNextEntry(new ZipEntry(root));
-      zip.closeEntry();
-      addedDirs.add(root);
-
-      for (Path file : generatedFiles) {
-        Path normalized = file.toAbsolutePath().normalize();
-        if (!Files.exists(normalized) || !Files.isRegularFile(normalized)) {
-          continue;
-        }
-        String relative = normalized.getFileName().toString();
-        if (absWorkspace != null && normalized.startsWith(absWorkspace)) {
-          relative = absWorkspace.relativize(normalized).toString().replace('\\', '/');
-        }
-        String entryName = root + relative;
-        ensureDirectoryEntries(zip, addedDirs, entryName);
-        zip.putNextEntry(new ZipEntry(entryName));
-        try (InputStream in = Files.newInputStream(normalized)) {
-          in.transferTo(zip);
-        }
-        zip.closeEntry();
-      }
-
-      zip.finish();
-      return baos.toByteArray();
+    for (EventBIR ir : outputs) {
+      String machineDir = root + projectName + "/machine" + ir.refinement() + "/";
+      writeZipEntry(zip, addedDirs, machineDir + ir.ctxName() + ".ctx", ir.ctxText());
+      writeZipEntry(zip, addedDirs, machineDir + ir.machName() + ".bcm", ir.machineText());
     }
+    zip.finish();
+  }
+
+  private void writeZipEntry(ZipOutputStream zip, Set<String> addedDirs, String entryName, String text)
+      throws IOException {
+    ensureDirectoryEntries(zip, addedDirs, entryName);
+    zip.putNextEntry(new ZipEntry(entryName));
+    zip.write(text.getBytes(StandardCharsets.UTF_8));
+    zip.closeEntry();
   }
 
   private void ensureDirectoryEntries(ZipOutputStream zip, Set<String> addedDirs, String entryName)
@@ -273,58 +745,75 @@ public class WebServer {
     return normalized;
   }
 
-  private GenerateRequest parseGenerateRequest(String body) {
-    String projectName = null;
-    Matcher nameMatcher = PROJECT_NAME.matcher(body);
-    if (nameMatcher.find()) {
-      projectName = nameMatcher.group(1).trim();
+  /**
+   * Parses the request body, answering 400 and returning null if it is not valid JSON or cannot
+   * be read.
+   */
+  private GenerateRequest readRequest(HttpExchange exchange) throws IOException {
+    try (InputStream body = new LimitedInputStream(exchange.getRequestBody(), MAX_REQUEST_BYTES)) {
+      return parseGenerateRequest(body);
+    } catch (RequestTooLargeException e) {
+      send(exchange, 413, "Request body larger than " + MAX_REQUEST_BYTES + " bytes", "text/plain");
+      return null;
+    } catch (IllegalArgumentException e) {
+      send(exchange, 400, "Invalid JSON request: " + e.getMessage(), "text/plain");
+      return null;
+    } catch (IOException e) {
+      send(exchange, 400, "Could not read request body: " + e.getMessage(), "text/plain");
+      return null;
     }
-    List<List<String>> refinements = parseRefinementGroups(body);
-    return new GenerateRequest(projectName, refinements);
   }
 
-  private List<List<String>> parseRefinementGroups(String body) {
+  /**
+   * Reads {@code {"projectName": "...", "refinements": [["a.xml", ...], ...]}} straight from the
+   * request stream. Unknown members and non-string group items are ignored.
+   */
+  private GenerateRequest parseGenerateRequest(InputStream body) throws IOException {
+    JsonReader reader = new JsonReader(body);
+    String projectName = null;
     List<List<String>> refinements = new ArrayList<>();
-    int keyIndex = body.indexOf("\"refinements\"");
-    if (keyIndex < 0) return refinements;
-    int arrayStart = body.indexOf('[', keyIndex);
-    if (arrayStart < 0) return refinements;
-    int arrayEnd = findMatchingBracket(body, arrayStart);
-    if (arrayEnd < 0) return refinements;
-    String inner = body.substring(arrayStart + 1, arrayEnd);
-    int pos = 0;
-    while (pos < inner.length()) {
-      int open = inner.indexOf('[', pos);
-      if (open < 0) break;
-      int close = findMatchingBracket(inner, open);
-      if (close < 0) break;
-      String segment = inner.substring(open + 1, close);
-      List<String> patterns = new ArrayList<>();
-      Matcher matcher = QUOTED_VALUE.matcher(segment);
-      while (matcher.find()) {
-        String value = matcher.group(1).trim();
-        if (!value.isEmpty()) patterns.add(value);
+    if (reader.peek() == JsonReader.Token.END) {
+      return new GenerateRequest(null, refinements);
+    }
+    reader.beginObject();
+    while (reader.hasNext()) {
+      String name = reader.nextName();
+      if (name.equals("projectName") && reader.peek() == JsonReader.Token.STRING) {
+        projectName = reader.nextString().trim();
+      } else if (name.equals("refinements") && reader.peek() == JsonReader.Token.BEGIN_ARRAY) {
+        readRefinementGroups(reader, refinements);
+      } else {
+        reader.skipValue();
       }
-      refinements.add(patterns);
-      pos = close + 1;
     }
-    return refinements;
+    reader.endObject();
+    if (reader.peek() != JsonReader.Token.END) {
+      throw new IllegalArgumentException("Unexpected data after request object");
+    }
+    return new GenerateRequest(projectName, refinements);
   }
 
-  private static int findMatchingBracket(String text, int start) {
-    int depth = 0;
-    for (int i = start; i < text.length(); i++) {
-      char c = text.charAt(i);
-      if (c == '[') {
-        depth++;
-      } else if (c == ']') {
-        depth--;
-        if (depth == 0) {
-          return i;
+  private void readRefinementGroups(JsonReader reader, List<List<String>> refinements) throws IOException {
+    reader.beginArray();
+    while (reader.hasNext()) {
+      if (reader.peek() != JsonReader.Token.BEGIN_ARRAY) {
+        reader.skipValue();
+        continue;
+      }
+      List<String> patterns = new ArrayList<>();
+      reader.beginArray();
+      while (reader.hasNext()) {
+        if (reader.peek() == JsonReader.Token.STRING) {
+          String value = reader.nextString().trim();
+          if (!value.isEmpty()) patterns.add(value);
+        } else {
+          reader.skipValue();
         }
       }
+      reader.endArray();
+      refinements.add(patterns);
     }
-    return -1;
+    reader.endArray();
   }
 
   private void send(HttpExchange exchange, int status, String body, String contentType) throws IOException {
@@ -336,35 +825,143 @@ public class WebServer {
     }
   }
 
+  /**
+   * Serves one classpath asset from memory. The resource is read and gzipped once, at startup;
+   * responses carry a strong ETag per encoding, so revalidations are answered with 304.
+   */
   private static class StaticHandler implements HttpHandler {
-    private final String resourcePath;
     private final String contentType;
+    private final byte[] data;
+    private final byte[] gzipped;
+    private final String etag;
+    private final String gzipEtag;
 
-    StaticHandler(String resourcePath, String contentType) {
-      this.resourcePath = resourcePath;
+    StaticHandler(String resourcePath, String contentType) throws IOException {
       this.contentType = contentType;
+      try (InputStream in = StaticHandler.class.getClassLoader().getResourceAsStream(resourcePath)) {
+        this.data = in == null ? null : in.readAllBytes();
+      }
+      if (data == null) {
+        this.gzipped = null;
+        this.etag = null;
+        this.gzipEtag = null;
+        return;
+      }
+      ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+      try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+        gzip.write(data);
+      }
+      // Only worth serving when it actually saves bytes.
+      this.gzipped = compressed.size() < data.length ? compressed.toByteArray() : null;
+      String hash = Hashes.sha256Hex(data).substring(0, 32);
+      this.etag = "\"" + hash + "\"";
+      this.gzipEtag = "\"" + hash + "-gz\"";
     }
 
     @Override
     public void handle(HttpExchange exchange) throws IOException {
-      if (!"GET".equalsIgnoreCase(exchange.getRequestMethod())) {
+      String method = exchange.getRequestMethod();
+      boolean head = "HEAD".equalsIgnoreCase(method);
+      if (!head && !"GET".equalsIgnoreCase(method)) {
         exchange.sendResponseHeaders(405, -1);
         return;
       }
-      try (InputStream in = getClass().getClassLoader().getResourceAsStream(resourcePath)) {
-        if (in == null) {
-          exchange.sendResponseHeaders(404, -1);
-          return;
-        }
-        byte[] data = in.readAllBytes();
-        exchange.getResponseHeaders().set("Content-Type", contentType + "; charset=utf-8");
-        exchange.sendResponseHeaders(200, data.length);
-        try (OutputStream os = exchange.getResponseBody()) {
-          os.write(data);
+      if (data == null) {
+        exchange.sendResponseHeaders(404, -1);
+        return;
+      }
+      boolean gzip = gzipped != null && acceptsGzip(exchange.getRequestHeaders().getFirst("Accept-Encoding"));
+      String tag = gzip ? gzipEtag : etag;
+      var headers = exchange.getResponseHeaders();
+      headers.set("ETag", tag);
+      headers.set("Cache-Control", "no-cache");
+      headers.set("Vary", "Accept-Encoding");
+      if (etagMatches(exchange.getRequestHeaders().getFirst("If-None-Match"), tag)) {
+        exchange.sendResponseHeaders(304, -1);
+        return;
+      }
+      byte[] body = gzip ? gzipped : data;
+      headers.set("Content-Type", contentType + "; charset=utf-8");
+      if (gzip) headers.set("Content-Encoding", "gzip");
+      if (head) {
+        headers.set("Content-Length", Integer.toString(body.length));
+        exchange.sendResponseHeaders(200, -1);
+        return;
+      }
+      exchange.sendResponseHeaders(200, body.length);
+      try (OutputStream os = exchange.getResponseBody()) {
+        os.write(body);
+      }
+    }
+
+    /** True if the header accepts gzip, explicitly or via {@code *}, with a non-zero q-value. */
+    private static boolean acceptsGzip(String acceptEncoding) {
+      if (acceptEncoding == null) return false;
+      Boolean wildcard = null;
+      for (String part : acceptEncoding.split(",")) {
+        String[] params = part.split(";");
+        String coding = params[0].trim();
+        boolean accepted = true;
+        for (int i = 1; i < params.length; i++) {
+          String param = params[i].replace(" ", "");
+          if (param.startsWith("q=")) {
+            try {
+              accepted = Double.parseDouble(param.substring(2)) > 0;
+            } catch (NumberFormatException e) {
+              accepted = false;
+            }
+          }
         }
+        if (coding.equalsIgnoreCase("gzip")) return accepted;
+        if (coding.equals("*")) wildcard = accepted;
       }
+      return wildcard != null && wildcard;
     }
   }
 
   private record GenerateRequest(String projectName, List<List<String>> refinements) {}
+
+  private static final class RequestTooLargeException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    RequestTooLargeException() {
+      super("Request body too large");
+    }
+  }
+
+  /** Fails with {@link RequestTooLargeException} once more than {@code max} bytes are read. */
+  private static final class LimitedInputStream extends FilterInputStream {
+    private long remaining;
+
+    LimitedInputStream(InputStream in, long max) {
+      super(in);
+      this.remaining = max;
+    }
+
+    @Override
+    public int read() throws IOException {
+      int b = super.read();
+      if (b >= 0) consumed(1);
+      return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      int n = super.read(b, off, len);
+      if (n > 0) consumed(n);
+      return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      long skipped = super.skip(n);
+      consumed(skipped);
+      return skipped;
+    }
+
+    private void consumed(long n) throws RequestTooLargeException {
+      remaining -= n;
+      if (remaining < 0) throw new RequestTooLargeException();
+    }
+  }
 }
@@ -5,9 +5,13 @@ const refinementInput = document.getElementById('refinement-count-input');
 const refinementGroupsEl = document.getElementById('refinement-groups');
 const patternContainer = document.getElementById('pattern-container');
 const clearRefinementBtn = document.getElementById('clear-refinement-btn');
+const previewContainer = document.getElementById('preview-container');
+const previewOutput = document.getElementById('preview-output');
 
 let availablePatterns = [];
 let refinementSelections = [];
+let previewTimer = null;
+let previewController = null;
 
 refinementForm.addEventListener('submit', (event) => {
   event.preventDefault();
@@ -36,6 +40,21 @@ generateBtn.addEventListener('click', handleGenerate);
 loadPatterns();
 updateGenerateState();
 
+function describePattern(pattern) {
+  if (pattern.error) return `Unreadable: ${pattern.error}`;
+  const parts = [];
+  if (Array.isArray(pattern.variables)) {
+    parts.push(`${pattern.variables.length} variable${pattern.variables.length === 1 ? '' : 's'}`);
+  }
+  if (Array.isArray(pattern.events)) {
+    parts.push(`${pattern.events.length} event${pattern.events.length === 1 ? '' : 's'}`);
+  }
+  if (Array.isArray(pattern.rules) && pattern.rules.length) {
+    parts.push(`combines in: ${pattern.rules.join(', ')}`);
+  }
+  return parts.join(' · ');
+}
+
 async function loadPatterns() {
   try {
     const res = await fetch('/api/patterns');
@@ -45,7 +64,11 @@ async function loadPatterns() {
       availablePatterns = [];
       throw new Error('Unexpected response while loading patterns.');
     }
-    availablePatterns = data;
+    // Entries are catalog objects ({ file, name, variables, events, rules }); plain file names
+    // are still accepted.
+    availablePatterns = data
+      .map((entry) => (typeof entry === 'string' ? { file: entry } : entry))
+      .filter((entry) => entry && typeof entry.file === 'string');
     renderRefinementGroups();
   } catch (err) {
     availablePatterns = [];
@@ -60,6 +83,7 @@ function applyRefinementCount(count) {
   refinementSelections = Array.from({ length: count }, () => new Set());
   renderRefinementGroups();
   updateGenerateState();
+  schedulePreview();
   showStatus(
     `Configured ${count} refinement${count === 1 ? '' : 's'}. Select patterns for each step.`,
   );
@@ -95,7 +119,8 @@ function createRefinementGroup(selection, index) {
   const list = document.createElement('div');
   list.className = 'pattern-list';
 
-  availablePatterns.forEach((name) => {
+  availablePatterns.forEach((pattern) => {
+    const name = pattern.file;
     const label = document.createElement('label');
     label.className = 'pattern-item';
 
@@ -110,12 +135,20 @@ function createRefinementGroup(selection, index) {
         selection.delete(name);
       }
       updateGenerateState();
+      schedulePreview();
     });
 
     const span = document.createElement('span');
     span.textContent = name;
 
     label.append(checkbox, span);
+    const summary = describePattern(pattern);
+    if (summary) {
+      const meta = document.createElement('small');
+      meta.className = 'pattern-meta';
+      meta.textContent = summary;
+      label.appendChild(meta);
+    }
     list.appendChild(label);
   });
 
@@ -137,9 +170,86 @@ function clearRefinements() {
   refinementGroupsEl.innerHTML = '';
   patternContainer.hidden = true;
   updateGenerateState();
+  schedulePreview();
   showStatus('Refinements cleared.');
 }
 
+function schedulePreview() {
+  clearTimeout(previewTimer);
+  previewTimer = setTimeout(runPreview, 150);
+}
+
+async function runPreview() {
+  if (previewController) previewController.abort();
+  const ready =
+    refinementSelections.length > 0 && refinementSelections.every((set) => set.size > 0);
+  if (!ready) {
+    previewOutput.innerHTML = '';
+    setPreviewStale(false);
+    previewContainer.hidden = true;
+    return;
+  }
+
+  const controller = new AbortController();
+  previewController = controller;
+  try {
+    const res = await fetch('/api/preview', {
+      method: 'POST',
+      headers: { 'Content-Type': 'application/json' },
+      body: JSON.stringify({ refinements: refinementSelections.map((set) => Array.from(set)) }),
+      signal: controller.signal,
+    });
+    // Server busy: grey out the previous preview and retry once the server asks us to.
+    if (res.status === 429) {
+      setPreviewStale(true);
+      const retryAfter = Number.parseInt(res.headers.get('Retry-After'), 10);
+      clearTimeout(previewTimer);
+      previewTimer = setTimeout(runPreview, Math.max(Number.isNaN(retryAfter) ? 1 : retryAfter, 0.25) * 1000);
+      return;
+    }
+    if (!res.ok) {
+      const text = await res.text();
+      throw new Error(text || `HTTP ${res.status}`);
+    }
+    const data = await res.json();
+    renderPreview(Array.isArray(data.refinements) ? data.refinements : []);
+  } catch (err) {
+    if (err.name === 'AbortError') return;
+    setPreviewStale(false);
+    previewOutput.textContent = `Preview failed: ${err.message}`;
+    previewContainer.hidden = false;
+  } finally {
+    if (previewController === controller) previewController = null;
+  }
+}
+
+function setPreviewStale(stale) {
+  previewContainer.classList.toggle('stale', stale);
+  previewContainer.title = stale ? 'Outdated: the server is busy, retrying shortly.' : '';
+}
+
+function renderPreview(refinements) {
+  previewOutput.innerHTML = '';
+  refinements.forEach((item) => {
+    const details = document.createElement('details');
+    details.className = 'preview-item';
+    details.open = refinements.length === 1;
+
+    const summary = document.createElement('summary');
+    summary.textContent = `Refinement ${item.refinement}: ${item.machineName} / ${item.contextName}`;
+
+    const context = document.createElement('pre');
+    context.textContent = item.context;
+    const machine = document.createElement('pre');
+    machine.textContent = item.machine;
+
+    details.append(summary, context, machine);
+    previewOutput.appendChild(details);
+  });
+  setPreviewStale(false);
+  previewContainer.hidden = refinements.length === 0;
+}
+
 function showStatus(message, isError = false) {
   statusEl.textContent = message;
   statusEl.classList.toggle('error', isError);
@@ -160,10 +270,10 @@ async function handleGenerate() {
   };
 
   generateBtn.disabled = true;
-  showStatus('Generating files…');
+  showStatus('Submitting generation job…');
 
   try {
-    const res = await fetch('/api/generate', {
+    const res = await fetch('/api/jobs', {
       method: 'POST',
       headers: { 'Content-Type': 'application/json' },
       body: JSON.stringify(payload),
@@ -172,29 +282,9 @@ async function handleGenerate() {
       const text = await res.text();
       throw new Error(text || `HTTP ${res.status}`);
     }
-    const projectName = res.headers.get('X-Project-Name') || '';
-    const projectPath = res.headers.get('X-Project-Path') || projectName || '';
-    const filesHeader = res.headers.get('X-Generated-Files') || '';
-    const files = parseFilesHeader(filesHeader);
-    const disposition = res.headers.get('Content-Disposition') || '';
-    const downloadName =
-      parseFileNameFromDisposition(disposition) ||
-      (projectName ? `${projectName}.zip` : 'eventb-artifacts.zip');
-    const blob = await res.blob();
-    const url = URL.createObjectURL(blob);
-    const anchor = document.createElement('a');
-    anchor.href = url;
-    anchor.download = downloadName;
-    document.body.appendChild(anchor);
-    anchor.click();
-    anchor.remove();
-    URL.revokeObjectURL(url);
-
-    const filesCount = files.length || refinementSelections.length * 2;
-    const targetPath = projectPath || 'workspace';
-    showStatus(
-      `Generated ${filesCount} file${filesCount === 1 ? '' : 's'} in ${targetPath}. Download saved as ${downloadName}.`,
-    );
+    const job = await res.json();
+    await followJob(job, payload.refinements.length);
+    await downloadArtifact(job.artifact);
   } catch (err) {
     showStatus(`Generation failed: ${err.message}`, true);
   } finally {
@@ -202,6 +292,84 @@ async function handleGenerate() {
   }
 }
 
+// Each refinement reports four stages: parse, compose, map and write.
+const STAGES_PER_REFINEMENT = 4;
+
+function followJob(job, refinementCount) {
+  const total = refinementCount * STAGES_PER_REFINEMENT;
+  return new Promise((resolve, reject) => {
+    const source = new EventSource(job.events);
+    let finished = 0;
+    source.addEventListener('stage', (event) => {
+      const data = JSON.parse(event.data);
+      if (data.status !== 'started') finished += 1;
+      const percent = Math.round((finished * 100) / total);
+      showStatus(`Generating… ${percent}% (refinement ${data.refinement}: ${data.stage} ${data.status})`);
+    });
+    source.addEventListener('done', () => {
+      source.close();
+      resolve();
+    });
+    source.addEventListener('failed', (event) => {
+      source.close();
+      reject(new Error(JSON.parse(event.data).message));
+    });
+    source.onerror = () => {
+      // EventSource reconnects (resuming via Last-Event-ID) unless the stream is gone for good,
+      // e.g. refused with 429 because too many streams are open: then poll the job status.
+      if (source.readyState === EventSource.CLOSED) {
+        pollJob(job).then(resolve, reject);
+      }
+    };
+  });
+}
+
+async function pollJob(job) {
+  while (true) {
+    const res = await fetch(job.status, { cache: 'no-store' });
+    if (!res.ok) {
+      const text = await res.text();
+      throw new Error(text || 'Lost connection to the generation job.');
+    }
+    const data = await res.json();
+    if (data.state === 'succeeded') return;
+    if (data.state === 'failed') throw new Error(data.error || 'Generation failed');
+    showStatus(`Generating… (${data.state})`);
+    await new Promise((resolve) => setTimeout(resolve, 500));
+  }
+}
+
+async function downloadArtifact(url) {
+  const res = await fetch(url);
+  if (!res.ok) {
+    const text = await res.text();
+    throw new Error(text || `HTTP ${res.status}`);
+  }
+  const projectName = res.headers.get('X-Project-Name') || '';
+  const projectPath = res.headers.get('X-Project-Path') || projectName || '';
+  const filesHeader = res.headers.get('X-Generated-Files') || '';
+  const files = parseFilesHeader(filesHeader);
+  const disposition = res.headers.get('Content-Disposition') || '';
+  const downloadName =
+    parseFileNameFromDisposition(disposition) ||
+    (projectName ? `${projectName}.zip` : 'eventb-artifacts.zip');
+  const blob = await res.blob();
+  const objectUrl = URL.createObjectURL(blob);
+  const anchor = document.createElement('a');
+  anchor.href = objectUrl;
+  anchor.download = downloadName;
+  document.body.appendChild(anchor);
+  anchor.click();
+  anchor.remove();
+  URL.revokeObjectURL(objectUrl);
+
+  const filesCount = files.length || refinementSelections.length * 2;
+  const targetPath = projectPath || 'workspace';
+  showStatus(
+    `Generated ${filesCount} file${filesCount === 1 ? '' : 's'} in ${targetPath}. Download saved as ${downloadName}.`,
+  );
+}
+
 function parseFilesHeader(header) {
   if (!header) return [];
   return header
@@ -0,0 +1,45 @@
+package app;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class BatchGeneratorTest {
+
+  @Test
+  void readsProjectNamesAndPathsContainingColons(@TempDir Path dir) throws Exception {
+    Path jobsFile = dir.resolve("jobs.txt");
+    Files.writeString(jobsFile, """
+        # comment
+        ComboProj | PSend.xml, C:PPacket.xml
+        C:PReceive.xml
+        """);
+
+    List<BatchGenerator.Job> jobs = BatchGenerator.load(jobsFile.toString());
+
+    assertEquals(List.of(
+        new BatchGenerator.Job("ComboProj", List.of(dir.resolve("PSend.xml"), dir.resolve("C:PPacket.xml"))),
+        new BatchGenerator.Job("C:PReceiveProj", List.of(dir.resolve("C:PReceive.xml")))), jobs);
+  }
+
+  @Test
+  void directoriesAndGlobsMatchTopLevelFilesOnly(@TempDir Path dir) throws Exception {
+    Files.createFile(dir.resolve("A.xml"));
+    Files.createFile(dir.resolve("B.txt"));
+    Files.createDirectories(dir.resolve("nested"));
+    Files.createFile(dir.resolve("nested").resolve("C.xml"));
+
+    List<String> expected = List.of("AProj");
+    assertEquals(expected, names(BatchGenerator.load(dir.toString())));
+    assertEquals(expected, names(BatchGenerator.load(dir.toString().replace('\\', '/') + "/*.xml")));
+  }
+
+  private static List<String> names(List<BatchGenerator.Job> jobs) {
+    return jobs.stream().map(BatchGenerator.Job::projectName).toList();
+  }
+}
@@ -0,0 +1,100 @@
+package app;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EventBMapperTest {
+
+  @Test
+  void streamedFilesMatchTheCollectedText(@TempDir Path project) throws Exception {
+    PatternModel model = new PatternComposer(new PatternCombinationEngine()).compose(bundled());
+    EventBMapper mapper = new EventBMapper();
+    EventBIR ir = mapper.toEventB(model, 2);
+
+    EventBMapper.Names names = new EventBWriter().write(project, mapper, model, 2);
+
+    Path dir = project.resolve("machine2");
+    assertEquals(ir.ctxText(), Files.readString(dir.resolve(names.ctxName() + ".ctx"), StandardCharsets.UTF_8));
+    assertEquals(ir.machineText(), Files.readString(dir.resolve(names.machName() + ".bcm"), StandardCharsets.UTF_8));
+  }
+
+  @Test
+  void numbersLabelsLikeTwoDigitFormatting() throws Exception {
+    PatternModel model = new PatternModel();
+    model.name = "Labels";
+    for (int i = 1; i <= 120; i++) {
+      PatternModel.Invariant inv = new PatternModel.Invariant();
+      inv.expression = "v" + i + " ∈ ℕ";
+      model.invariants.add(inv);
+    }
+
+    String machine = new EventBMapper().toEventB(model, 0).machineText();
+
+    for (int i = 1; i <= 120; i++) {
+      String line = String.format("  @inv%02d v%d ∈ ℕ\n", i, i);
+      assertTrue(machine.contains(line), line);
+    }
+  }
+
+  @Test
+  void reusesCachedEventBlocksOnlyForEqualContent() {
+    EventBMapper cached = new EventBMapper();
+    EventBMapper uncached = new EventBMapper(0);
+    // "Aa" and "BB" share a String hash code, so both events share a structural hash.
+    PatternModel model = new PatternModel();
+    model.events.add(event("Aa", "x > 0"));
+    model.events.add(event("BB", "x > 0"));
+
+    String first = cached.toEventB(model, 0).machineText();
+    assertEquals(uncached.toEventB(model, 0).machineText(), first);
+    assertTrue(first.contains("event Aa") && first.contains("event BB"), first);
+    assertEquals(0, cached.fragmentHits());
+    assertEquals(2, cached.fragmentMisses());
+
+    model.events.get(1).name = "Aa_2";
+    model.events.get(1).invalidate();
+    model.events.add(event("Aa", "x > 0"));
+    String second = cached.toEventB(model, 1).machineText();
+    assertEquals(uncached.toEventB(model, 1).machineText(), second);
+    // Colliding blocks share one slot: BB's block evicted Aa's, so only the second Aa hits.
+    assertEquals(1, cached.fragmentHits());
+    assertEquals(4, cached.fragmentMisses());
+
+    PatternModel.Guard guard = new PatternModel.Guard();
+    guard.expr = "x < 9";
+    model.events.get(0).guards.add(guard);
+    String third = cached.toEventB(model, 1).machineText();
+    assertEquals(uncached.toEventB(model, 1).machineText(), third);
+    assertFalse(third.equals(second));
+  }
+
+  private static PatternModel.Event event(String name, String guardExpr) {
+    PatternModel.Event event = new PatternModel.Event();
+    event.name = name;
+    PatternModel.Guard guard = new PatternModel.Guard();
+    guard.expr = guardExpr;
+    event.guards.add(guard);
+    return event;
+  }
+
+  private static List<PatternModel> bundled() throws Exception {
+    PatternParser parser = new PatternDomParser();
+    List<PatternModel> models = new ArrayList<>();
+    try (var stream = Files.list(Path.of("node_Structure"))) {
+      for (Path xml : stream.filter(p -> p.toString().endsWith(".xml")).sorted().toList()) {
+        models.add(parser.parse(xml));
+      }
+    }
+    return models;
+  }
+}
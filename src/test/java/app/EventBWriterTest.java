@@ -0,0 +1,42 @@
+package app;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class EventBWriterTest {
+
+  @Test
+  void leavesUnchangedOutputAlone(@TempDir Path project) throws Exception {
+    EventBMapper mapper = new EventBMapper();
+    PatternModel model = new PatternDomParser().parse(Path.of("node_Structure", "PSend.xml"));
+    EventBWriter writer = new EventBWriter();
+
+    writer.write(project, mapper, model, 0);
+    assertEquals(2, writer.filesWritten());
+    List<Path> files = files(project);
+    FileTime old = FileTime.fromMillis(0);
+    for (Path file : files) Files.setLastModifiedTime(file, old);
+
+    writer.write(project, mapper, model, 0);
+    writer.write(project, mapper.toEventB(model, 0));
+
+    assertEquals(2, writer.filesWritten());
+    assertEquals(4, writer.filesSkipped());
+    // No temp files left behind and nothing rewritten.
+    assertEquals(files, files(project));
+    for (Path file : files) assertEquals(old, Files.getLastModifiedTime(file));
+  }
+
+  private static List<Path> files(Path project) throws Exception {
+    try (var stream = Files.walk(project)) {
+      return stream.filter(Files::isRegularFile).sorted().toList();
+    }
+  }
+}
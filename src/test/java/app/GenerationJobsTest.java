@@ -0,0 +1,65 @@
+package app;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GenerationJobsTest {
+
+  @Test
+  void jobsWaitForASharedGenerationPermit(@TempDir Path workspace) throws Exception {
+    GenerationService service = new GenerationService(new PatternDomParser(), new EventBMapper(),
+        new EventBWriter(), new RodinProjectService(workspace));
+    Semaphore permits = new Semaphore(0);
+    GenerationJobs jobs = new GenerationJobs(service, Executors.newCachedThreadPool(), permits, 1, false, 16, 60_000);
+
+    GenerationJobs.Job job = jobs.submit("P", List.of(List.of(Path.of("node_Structure", "PSend.xml"))));
+    Thread.sleep(200);
+    assertEquals(GenerationJobs.State.QUEUED, job.state());
+
+    permits.release();
+    while (!job.finished()) job.eventsAfter(Long.MAX_VALUE, 1000);
+    assertEquals(GenerationJobs.State.SUCCEEDED, job.state());
+    // Handed back right after the job finishes.
+    assertTrue(permits.tryAcquire(5, TimeUnit.SECONDS));
+    permits.release();
+
+    GenerationJobs.Job other = jobs.submit("Q", List.of(List.of(Path.of("node_Structure", "PSend.xml"))));
+    assertNotEquals(job.id(), other.id());
+    assertEquals(4, UUID.fromString(job.id()).version(), job.id());
+  }
+
+  @Test
+  void reportsEveryPatternThatFailsToParse(@TempDir Path workspace, @TempDir Path inputs) throws Exception {
+    GenerationService service = new GenerationService(new PatternDomParser(), new EventBMapper(),
+        new EventBWriter(), new RodinProjectService(workspace));
+    GenerationJobs jobs = new GenerationJobs(service, Executors.newCachedThreadPool(), new Semaphore(1), 1, false,
+        16, 60_000);
+    Path broken = Files.writeString(inputs.resolve("Broken.xml"), "<Pattern name=");
+    Path missing = inputs.resolve("Missing.xml");
+
+    GenerationJobs.Job job = jobs.submit("P",
+        List.of(List.of(Path.of("node_Structure", "PSend.xml"), broken, missing)));
+    List<GenerationJobs.Event> events = new ArrayList<>();
+    while (!job.finished()) events.addAll(job.eventsAfter(events.size(), 1000));
+    events.addAll(job.eventsAfter(events.size(), 0));
+
+    assertEquals(GenerationJobs.State.FAILED, job.state());
+    assertTrue(job.error().contains("Broken.xml: ") && job.error().contains("Missing.xml: "), job.error());
+    assertTrue(events.stream().anyMatch(e -> e.type().equals("stage")
+        && e.data().equals("{\"refinement\":1,\"stage\":\"parse\",\"status\":\"started\"}")), events::toString);
+    assertEquals("failed", events.get(events.size() - 1).type());
+  }
+}
@@ -0,0 +1,64 @@
+package app;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GenerationPipelineTest {
+
+  @Test
+  void interruptedCloseFinishesEveryFutureAndKeepsTheFlag(@TempDir Path workspace) throws Exception {
+    GenerationService service = new GenerationService(new PatternDomParser(), new EventBMapper(),
+        new EventBWriter(), new RodinProjectService(workspace));
+    GenerationPipeline pipeline = new GenerationPipeline(service, GenerationPipeline.Settings.forParallelism(1), false);
+    CompletableFuture<Boolean> done = pipeline.submit(List.of(Path.of("node_Structure", "PSend.xml")), "P");
+
+    Thread.currentThread().interrupt();
+    pipeline.close();
+
+    assertTrue(Thread.interrupted());
+    // Either written before the stages stopped, or cancelled; never left pending.
+    assertTrue(done.handle((generated, failure) -> true).get(10, TimeUnit.SECONDS));
+  }
+
+  @Test
+  void interruptedCloseDoesNotCancelATaskALaterStageIsFinishing(@TempDir Path workspace) throws Exception {
+    CountDownLatch writing = new CountDownLatch(1);
+    EventBWriter slowWriter = new EventBWriter() {
+      @Override
+      public void write(Path project, EventBIR ir) throws IOException {
+        writing.countDown();
+        // Keep writing through the interrupt close() sends to every stage.
+        long until = System.nanoTime() + 300_000_000L;
+        while (System.nanoTime() < until) Thread.onSpinWait();
+        boolean interrupted = Thread.interrupted();
+        try {
+          super.write(project, ir);
+        } finally {
+          if (interrupted) Thread.currentThread().interrupt();
+        }
+      }
+    };
+    GenerationService service = new GenerationService(new PatternDomParser(), new EventBMapper(),
+        slowWriter, new RodinProjectService(workspace));
+    GenerationPipeline pipeline = new GenerationPipeline(service, GenerationPipeline.Settings.forParallelism(1), false);
+    CompletableFuture<Boolean> done = pipeline.submit(List.of(Path.of("node_Structure", "PSend.xml")), "P");
+    assertTrue(writing.await(10, TimeUnit.SECONDS));
+
+    Thread.currentThread().interrupt();
+    pipeline.close();
+
+    assertTrue(Thread.interrupted());
+    // The parse and compose workers forwarded the task long ago; only the write stage owns it.
+    assertEquals(true, done.get(10, TimeUnit.SECONDS));
+  }
+}
@@ -0,0 +1,61 @@
+package app;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GenerationServiceTest {
+
+  private static final Path PSEND = Path.of("node_Structure", "PSend.xml");
+  private static final Path PPACKET = Path.of("node_Structure", "PPacket.xml");
+
+  @Test
+  void resumesFromASinglePatternSelection(@TempDir Path workspace) throws Exception {
+    GenerationService service = service(workspace);
+
+    service.composeModel(List.of(PSEND));
+    PatternModel composed = service.composeModel(List.of(PSEND, PPACKET));
+
+    assertEquals(1, service.compositionCache().prefixHits());
+    assertEquals(0, service.compositionCache().misses());
+    assertArrayEquals(
+        PatternStaxParserTest.encoded(service(workspace).composeModel(List.of(PSEND, PPACKET))),
+        PatternStaxParserTest.encoded(composed));
+  }
+
+  @Test
+  void regeneratesOnlyWhenInputsOrOutputsChange(@TempDir Path workspace, @TempDir Path inputs)
+      throws Exception {
+    Path pattern = Files.copy(PSEND, inputs.resolve("PSend.xml"));
+    GenerationService service = service(workspace);
+
+    assertTrue(service.generateIncremental(List.of(pattern), "P", ReqSpec.empty()));
+    assertFalse(service.generateIncremental(List.of(pattern), "P", ReqSpec.empty()));
+
+    Path ctx;
+    try (var stream = Files.walk(workspace.resolve("P"))) {
+      ctx = stream.filter(p -> p.toString().endsWith(".ctx")).findFirst().orElseThrow();
+    }
+    Files.writeString(ctx, "edited", StandardOpenOption.APPEND);
+    assertTrue(service.generateIncremental(List.of(pattern), "P", ReqSpec.empty()));
+    assertFalse(service.generateIncremental(List.of(pattern), "P", ReqSpec.empty()));
+
+    Files.writeString(pattern, "<!-- edited -->\n", StandardOpenOption.APPEND);
+    assertTrue(service.generateIncremental(List.of(pattern), "P", ReqSpec.empty()));
+    assertFalse(service.generateIncremental(List.of(pattern), "P", ReqSpec.empty()));
+  }
+
+  private static GenerationService service(Path workspace) {
+    return new GenerationService(new PatternDomParser(), new EventBMapper(), new EventBWriter(),
+        new RodinProjectService(workspace));
+  }
+}
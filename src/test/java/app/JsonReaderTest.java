@@ -0,0 +1,53 @@
+package app;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class JsonReaderTest {
+
+  @Test
+  void skipsValidLiteralsAndNumbers() throws IOException {
+    JsonReader reader = new JsonReader(new StringReader(
+        "{\"a\": true, \"b\": false, \"c\": null, \"d\": [0, -0.5e+10, 12, 3E2, 1.25, -7e-1], \"e\": \"x\"}"));
+    reader.beginObject();
+    while (reader.hasNext()) {
+      reader.nextName();
+      reader.skipValue();
+    }
+    reader.endObject();
+    assertEquals(JsonReader.Token.END, reader.peek());
+  }
+
+  @Test
+  void rejectsMalformedLiteralsAndNumbers() {
+    for (String value : new String[] {"tru", "nul1", "fals", "truex", "nulll", "01", "1.", "-", "1e", "1e+",
+        ".5", "+1", "0x10", "1.5.2"}) {
+      JsonReader reader = new JsonReader(new StringReader("{\"x\": " + value + "}"));
+      assertThrows(IllegalArgumentException.class, () -> {
+        reader.beginObject();
+        reader.nextName();
+        reader.skipValue();
+        reader.endObject();
+      }, value);
+    }
+  }
+
+  @Test
+  void limitsNestingDepth() throws IOException {
+    String ok = "[".repeat(JsonReader.MAX_DEPTH) + "]".repeat(JsonReader.MAX_DEPTH);
+    JsonReader reader = new JsonReader(new StringReader(ok));
+    reader.skipValue();
+    assertEquals(JsonReader.Token.END, reader.peek());
+
+    for (String deep : new String[] {"[".repeat(JsonReader.MAX_DEPTH + 1) + "]".repeat(JsonReader.MAX_DEPTH + 1),
+        "[{\"a\":".repeat(100_000)}) {
+      JsonReader tooDeep = new JsonReader(new StringReader(deep));
+      assertThrows(IllegalArgumentException.class, tooDeep::skipValue);
+    }
+  }
+}
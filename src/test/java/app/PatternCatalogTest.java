@@ -0,0 +1,66 @@
+package app;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+class PatternCatalogTest {
+
+  @Test
+  void servesANewETagOnceAPatternFileChanges(@TempDir Path dir, @TempDir Path workspace) throws Exception {
+    Path psend = Files.copy(Path.of("node_Structure", "PSend.xml"), dir.resolve("PSend.xml"));
+    Files.copy(Path.of("node_Structure", "PReceive.xml"), dir.resolve("PReceive.xml"));
+    try (PatternCatalog catalog = catalog(dir, workspace)) {
+      catalog.start();
+      PatternCatalog.Snapshot before = catalog.snapshot();
+      assertEquals(2, before.patternCount());
+
+      Files.writeString(psend, Files.readString(psend).replace("<Pattern name=\"PSend\"", "<Pattern name=\"PSendRenamed\""));
+      PatternCatalog.Snapshot renamed = awaitChange(catalog, before);
+      assertTrue(new String(renamed.json(), StandardCharsets.UTF_8).contains("\"PSendRenamed\""));
+
+      Files.copy(Path.of("node_Structure", "PPacket.xml"), dir.resolve("PPacket.xml"));
+      assertEquals(3, awaitChange(catalog, renamed).patternCount());
+    }
+  }
+
+  @Test
+  void keepsTheETagWhenOnlyTheTimestampChanges(@TempDir Path dir, @TempDir Path workspace) throws Exception {
+    Path psend = Files.copy(Path.of("node_Structure", "PSend.xml"), dir.resolve("PSend.xml"));
+    try (PatternCatalog catalog = catalog(dir, workspace)) {
+      catalog.refresh();
+      String etag = catalog.snapshot().etag();
+
+      Files.setLastModifiedTime(psend, FileTime.fromMillis(Files.getLastModifiedTime(psend).toMillis() + 1000));
+      catalog.refresh();
+
+      assertEquals(etag, catalog.snapshot().etag());
+    }
+  }
+
+  private static PatternCatalog catalog(Path dir, Path workspace) {
+    GenerationService service = new GenerationService(new PatternDomParser(), new EventBMapper(),
+        new EventBWriter(), new RodinProjectService(workspace));
+    return new PatternCatalog(dir, service.modelCache(), service.combinationEngine());
+  }
+
+  private static PatternCatalog.Snapshot awaitChange(PatternCatalog catalog, PatternCatalog.Snapshot previous)
+      throws InterruptedException {
+    long deadline = System.nanoTime() + 10_000_000_000L;
+    while (System.nanoTime() < deadline) {
+      PatternCatalog.Snapshot current = catalog.snapshot();
+      if (!current.etag().equals(previous.etag())) return current;
+      Thread.sleep(20);
+    }
+    fail("ETag never changed from " + previous.etag());
+    return previous;
+  }
+}
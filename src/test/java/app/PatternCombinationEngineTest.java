@@ -0,0 +1,126 @@
+package app;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PatternCombinationEngineTest {
+
+  private static final List<String> PATTERNS = List.of("PSend", "PPacket", "PNDBuffer", "PReceive");
+
+  @Test
+  void chainsTheCatalogExampleOverEventsUsedInEarlierRounds(@TempDir Path dir) throws Exception {
+    Path catalog = dir.resolve(PatternCombinationEngine.CATALOG_FILE);
+    Files.writeString(catalog, Files.readString(Path.of(PatternCombinationEngine.CATALOG_FILE))
+        + "relay = @receive + PNDBuffer.record_ndBuff\n");
+    PatternCombinationEngine engine = PatternCombinationEngine.fromCatalog(catalog).withChaining(8);
+
+    List<String> names = eventNames(new PatternComposer(engine).compose(parse(PATTERNS)));
+
+    assertTrue(names.contains("relay"), () -> "relay did not fire: " + names);
+    // record_ndBuff also fed both round-1 rules that reference it.
+    assertTrue(names.contains("creating_Pkt"), names::toString);
+    assertTrue(names.contains("fwdr_receive_pkts"), names::toString);
+    // The chained composite replaces the one it consumed, and used originals are dropped.
+    assertFalse(names.contains("receive"), names::toString);
+    assertFalse(names.contains("record_ndBuff"), names::toString);
+  }
+
+  @Test
+  void leavesChainedRulesAloneWithoutChaining(@TempDir Path dir) throws Exception {
+    Path catalog = dir.resolve(PatternCombinationEngine.CATALOG_FILE);
+    Files.writeString(catalog, Files.readString(Path.of(PatternCombinationEngine.CATALOG_FILE))
+        + "relay = @receive + PNDBuffer.record_ndBuff\n");
+    PatternCombinationEngine engine = PatternCombinationEngine.fromCatalog(catalog);
+
+    List<String> names = eventNames(new PatternComposer(engine).compose(parse(PATTERNS)));
+
+    assertFalse(names.contains("relay"), names::toString);
+    assertTrue(names.contains("receive"), names::toString);
+  }
+
+  @Test
+  void firesIndexedRulesInCatalogOrderWhateverTheEventOrder(@TempDir Path dir) throws Exception {
+    Path catalog = dir.resolve(PatternCombinationEngine.CATALOG_FILE);
+    Files.writeString(catalog, String.join("\n",
+        "zeta  = B.y + A.x",
+        "alpha = C.z + A.x",
+        "never = A.x + D.missing",
+        "mid   = c.Z + b.Y",
+        ""));
+    PatternCombinationEngine engine = PatternCombinationEngine.fromCatalog(catalog);
+
+    List<PatternModel.Event> events = List.of(
+        event("C", "z"), event("E", "other"), event("B", "y"), event("A", "x"));
+
+    // A linear scan of the catalog: every rule whose events are all present fires, in catalog
+    // order, followed by the unused originals in input order.
+    assertEquals(List.of("zeta", "alpha", "mid", "other"), names(engine.apply(events)));
+    assertEquals(List.of("zeta", "alpha", "mid", "other"),
+        names(engine.apply(List.of(events.get(3), events.get(1), events.get(2), events.get(0)))));
+  }
+
+  @Test
+  void ignoresRulesWhoseEventsAreAbsentHoweverLargeTheCatalog(@TempDir Path dir) throws Exception {
+    StringBuilder text = new StringBuilder();
+    for (int i = 0; i < 2000; i++) text.append("r").append(i).append(" = P").append(i).append(".e + Q.f\n");
+    text.append("hit = A.x + B.y\n");
+    Path catalog = dir.resolve(PatternCombinationEngine.CATALOG_FILE);
+    Files.writeString(catalog, text);
+    PatternCombinationEngine engine = PatternCombinationEngine.fromCatalog(catalog);
+
+    assertEquals(2001, engine.ruleCount());
+    assertEquals(List.of("hit", "f"),
+        names(engine.apply(List.of(event("Q", "f"), event("A", "x"), event("B", "y")))));
+  }
+
+  @Test
+  void reportsCatalogErrorsWithTheirLine(@TempDir Path dir) throws Exception {
+    Path catalog = dir.resolve(PatternCombinationEngine.CATALOG_FILE);
+    String[][] cases = {
+        {"= A.x + B.y", ":2: expected"},
+        {"out = A.x + B", ":2: invalid event reference 'B'"},
+        {"out = A.x + .y", ":2: invalid event reference '.y'"},
+        {"out = A.x + @ ", ":2: invalid composite reference '@'"},
+    };
+    for (String[] c : cases) {
+      Files.writeString(catalog, "# header\n" + c[0] + "\n");
+      IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+          () -> PatternCombinationEngine.fromCatalog(catalog));
+      assertTrue(e.getMessage().contains(c[1]), e::getMessage);
+    }
+  }
+
+  private static PatternModel.Event event(String pattern, String name) {
+    PatternModel.Event event = new PatternModel.Event();
+    event.sourcePattern = pattern;
+    event.name = name;
+    return event;
+  }
+
+  private static List<String> names(List<PatternModel.Event> events) {
+    return events.stream().map(e -> e.name).toList();
+  }
+
+  private static List<PatternModel> parse(List<String> patterns) throws Exception {
+    PatternParser parser = new PatternDomParser();
+    List<PatternModel> models = new ArrayList<>();
+    for (String pattern : patterns) {
+      models.add(parser.parse(Path.of("node_Structure", pattern + ".xml")));
+    }
+    return models;
+  }
+
+  private static List<String> eventNames(PatternModel model) {
+    return names(model.events);
+  }
+}
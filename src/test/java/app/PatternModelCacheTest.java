@@ -0,0 +1,65 @@
+package app;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+
+class PatternModelCacheTest {
+
+  @Test
+  void countsHitsAndMissesAndHandsOutCopies(@TempDir Path dir) throws Exception {
+    Path xml = Files.copy(Path.of("node_Structure", "PSend.xml"), dir.resolve("PSend.xml"));
+    PatternModelCache cache = new PatternModelCache(new PatternDomParser());
+
+    PatternModel first = cache.parse(xml);
+    String name = first.name;
+    first.name = "changed by caller";
+    first.events.clear();
+    PatternModel second = cache.parse(xml);
+
+    assertEquals(1, cache.misses());
+    assertEquals(1, cache.hits());
+    assertNotSame(first, second);
+    assertEquals(name, second.name);
+    assertEquals(new PatternDomParser().parse(xml).events.size(), second.events.size());
+  }
+
+  @Test
+  void reparsesWhenTheContentChanges(@TempDir Path dir) throws Exception {
+    Path xml = Files.copy(Path.of("node_Structure", "PSend.xml"), dir.resolve("PSend.xml"));
+    PatternModelCache cache = new PatternModelCache(new PatternDomParser());
+    assertEquals("PSend", cache.parse(xml).name);
+
+    Files.writeString(xml, Files.readString(xml).replace("<Pattern name=\"PSend\"", "<Pattern name=\"PSendNew\""));
+    PatternModel after = cache.parse(xml);
+
+    assertEquals(2, cache.misses());
+    assertEquals("PSendNew", after.name);
+  }
+
+  @Test
+  void doesNotCacheAModelWhoseFileChangedWhileParsing(@TempDir Path dir) throws Exception {
+    Path xml = Files.copy(Path.of("node_Structure", "PSend.xml"), dir.resolve("PSend.xml"));
+    String original = Files.readString(xml);
+    AtomicBoolean edit = new AtomicBoolean(true);
+    PatternParser editedOnce = path -> {
+      if (edit.getAndSet(false)) Files.writeString(path, original.replace("<Pattern name=\"PSend\"", "<Pattern name=\"PSendNew\""));
+      return new PatternDomParser().parse(path);
+    };
+    PatternModelCache cache = new PatternModelCache(editedOnce);
+    String expected = new PatternDomParser().parse(xml).name;
+
+    cache.parse(xml);
+    Files.writeString(xml, original);
+
+    // The original content again: it must not be served the model of the edited file.
+    assertEquals(expected, cache.parse(xml).name);
+    assertEquals(2, cache.misses());
+  }
+}
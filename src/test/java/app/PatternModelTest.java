@@ -0,0 +1,100 @@
+package app;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Iterator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PatternModelTest {
+
+  @Test
+  void equalContentHashesEquallyWhateverTheSourcePattern() {
+    PatternModel.Event a = event("send", "x", "x > 0", "y := x");
+    PatternModel.Event b = event("send", "x", "x > 0", "y := x");
+    b.sourcePattern = "PReceive";
+
+    assertEquals(a.structuralHash(), b.structuralHash());
+    assertTrue(a.contentEquals(b));
+    assertTrue(a.contentEquals(a.copy()));
+  }
+
+  @Test
+  void fallsBackToFieldComparisonWhenHashesCollide() {
+    // "Aa" and "BB" share a String hash code, so the events share a structural hash.
+    PatternModel.Event a = event("Aa", "x", "x > 0", "y := x");
+    PatternModel.Event b = event("BB", "x", "x > 0", "y := x");
+
+    assertEquals(a.structuralHash(), b.structuralHash());
+    assertFalse(a.contentEquals(b));
+
+    PatternModel.Event c = event("send", "x", "Aa = 1", "y := x");
+    PatternModel.Event d = event("send", "x", "BB = 1", "y := x");
+    assertEquals(c.structuralHash(), d.structuralHash());
+    assertFalse(c.contentEquals(d));
+  }
+
+  @Test
+  void listChangesDropCachedHashAndIdentifiers() {
+    PatternModel.Event a = event("send", "x", "x > 0", "y := x");
+    PatternModel.Event b = a.copy();
+    int hash = a.structuralHash();
+    assertTrue(a.identifiers().contains("y"));
+
+    PatternModel.Guard guard = new PatternModel.Guard();
+    guard.expr = "z > 0";
+    a.guards.add(guard);
+    assertNotEquals(hash, a.structuralHash());
+    assertFalse(a.contentEquals(b));
+    assertTrue(a.identifiers().contains("z"));
+
+    a.guards.remove(1);
+    assertEquals(hash, a.structuralHash());
+    assertTrue(a.contentEquals(b));
+
+    PatternModel.Action action = new PatternModel.Action();
+    action.assignment = "w := x";
+    a.actions.set(0, action);
+    assertFalse(a.identifiers().contains("y"));
+    assertTrue(a.identifiers().contains("w"));
+    assertFalse(a.contentEquals(b));
+
+    Iterator<PatternModel.Param> params = a.params.iterator();
+    params.next();
+    params.remove();
+    b.params.clear();
+    b.actions.set(0, action);
+    assertEquals(b.structuralHash(), a.structuralHash());
+    assertTrue(a.contentEquals(b));
+  }
+
+  @Test
+  void renamingNeedsAnExplicitInvalidate() {
+    PatternModel.Event a = event("send", "x", "x > 0", "y := x");
+    PatternModel.Event b = event("recv", "x", "x > 0", "y := x");
+    assertFalse(a.contentEquals(b));
+
+    a.name = "recv";
+    a.invalidate();
+    assertEquals(b.structuralHash(), a.structuralHash());
+    assertTrue(a.contentEquals(b));
+  }
+
+  private static PatternModel.Event event(String name, String param, String guardExpr, String assignment) {
+    PatternModel.Event event = new PatternModel.Event();
+    event.name = name;
+    PatternModel.Param p = new PatternModel.Param();
+    p.name = param;
+    event.params.add(p);
+    PatternModel.Guard g = new PatternModel.Guard();
+    g.expr = guardExpr;
+    event.guards.add(g);
+    PatternModel.Action a = new PatternModel.Action();
+    a.assignment = assignment;
+    event.actions.add(a);
+    return event;
+  }
+}
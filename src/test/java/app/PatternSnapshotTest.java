@@ -0,0 +1,97 @@
+package app;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class PatternSnapshotTest {
+
+  private final PatternParser parser = new PatternDomParser();
+
+  @Test
+  void roundTripsEveryBundledPattern(@TempDir Path dir) throws Exception {
+    try (var stream = Files.list(Path.of("node_Structure"))) {
+      for (Path source : stream.filter(p -> p.toString().endsWith(".xml")).toList()) {
+        Path xml = Files.copy(source, dir.resolve(source.getFileName()));
+        PatternSnapshot.compile(parser, xml);
+        PatternModel loaded = PatternSnapshot.load(xml);
+        assertNotNull(loaded, () -> "snapshot not loaded for " + xml);
+        assertArrayEquals(PatternStaxParserTest.encoded(parser.parse(xml)),
+            PatternStaxParserTest.encoded(loaded), () -> "snapshot differs for " + xml);
+      }
+    }
+  }
+
+  @Test
+  void ignoresSnapshotWhenContentChangesWithSameSize(@TempDir Path dir) throws Exception {
+    Path xml = Files.copy(Path.of("node_Structure/PSend.xml"), dir.resolve("PSend.xml"));
+    PatternSnapshot.compile(parser, xml);
+    FileTime modified = Files.getLastModifiedTime(xml);
+
+    String text = Files.readString(xml);
+    Files.writeString(xml, text.replaceFirst("PSend", "QSend"));
+    Files.setLastModifiedTime(xml, FileTime.fromMillis(modified.toMillis() + 1000));
+
+    assertNull(PatternSnapshot.load(xml));
+  }
+
+  @Test
+  void keepsSnapshotWhenSourceIsTouchedButUnchanged(@TempDir Path dir) throws Exception {
+    Path xml = Files.copy(Path.of("node_Structure/PSend.xml"), dir.resolve("PSend.xml"));
+    PatternSnapshot.compile(parser, xml);
+    FileTime modified = Files.getLastModifiedTime(xml);
+
+    Files.setLastModifiedTime(xml, FileTime.fromMillis(modified.toMillis() + 1000));
+
+    assertNotNull(PatternSnapshot.load(xml));
+  }
+
+  @Test
+  void trustsSnapshotWhileSourceSizeAndTimeAreUnchanged(@TempDir Path dir) throws Exception {
+    Path xml = Files.copy(Path.of("node_Structure/PSend.xml"), dir.resolve("PSend.xml"));
+    Path snapshot = PatternSnapshot.compile(parser, xml);
+    byte[] good = Files.readAllBytes(snapshot);
+
+    // Zeroing the recorded hash only matters once the XML's mtime moves on.
+    byte[] zeroHash = good.clone();
+    Arrays.fill(zeroHash, 24, 56, (byte) 0);
+    Files.write(snapshot, zeroHash);
+    assertNotNull(PatternSnapshot.load(xml));
+
+    Files.setLastModifiedTime(xml,
+        FileTime.fromMillis(Files.getLastModifiedTime(xml).toMillis() + 1000));
+    assertNull(PatternSnapshot.load(xml));
+  }
+
+  @Test
+  void rejectsCorruptAndTruncatedSnapshots(@TempDir Path dir) throws Exception {
+    Path xml = Files.copy(Path.of("node_Structure/PSend.xml"), dir.resolve("PSend.xml"));
+    Path snapshot = PatternSnapshot.compile(parser, xml);
+    byte[] good = Files.readAllBytes(snapshot);
+
+    // String-table count right after the 56-byte header: huge, then negative.
+    for (int count : new int[] {Integer.MAX_VALUE, -1}) {
+      byte[] corrupt = good.clone();
+      ByteBuffer.wrap(corrupt).putInt(56, count);
+      Files.write(snapshot, corrupt);
+      assertNull(PatternSnapshot.load(xml));
+    }
+
+    for (int length : new int[] {10, 60, good.length / 2, good.length - 1}) {
+      Path truncated = dir.resolve("truncated");
+      Files.write(truncated, Arrays.copyOf(good, length));
+      Files.move(truncated, snapshot, StandardCopyOption.REPLACE_EXISTING);
+      assertNull(PatternSnapshot.load(xml), "truncated to " + length);
+    }
+  }
+}
@@ -0,0 +1,111 @@
+package app;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class PatternStaxParserTest {
+
+  private final PatternParser dom = new PatternDomParser();
+  private final PatternParser stax = new PatternStaxParser();
+
+  @Test
+  void matchesDomParserOnBundledPatterns() throws Exception {
+    List<Path> xmls;
+    try (var stream = Files.list(Path.of("node_Structure"))) {
+      xmls = stream.filter(p -> p.toString().endsWith(".xml")).sorted().toList();
+    }
+    assertFalse(xmls.isEmpty());
+    for (Path xml : xmls) {
+      assertSameModel(xml);
+    }
+  }
+
+  @Test
+  void includesNestedElementsWithTheSameName(@TempDir Path dir) throws Exception {
+    Path xml = dir.resolve("Nested.xml");
+    Files.writeString(xml, """
+        <Pattern name="Nested">
+          <Context>
+            <Sets><Set name="A"><Set name="B"/></Set></Sets>
+          </Context>
+          <Variables>
+            <Variable name="x" type="NAT"><Variable name="y"/></Variable>
+          </Variables>
+          <Events>
+            <Event name="outer">
+              <Guards>
+                <Guard>x &gt; 0<Guard expression="y = 1"/></Guard>
+              </Guards>
+              <Extra><Event name="inner"><Actions><Action var="x" value="1"/></Actions></Event></Extra>
+            </Event>
+            <Event/>
+          </Events>
+        </Pattern>
+        """);
+    PatternModel model = assertSameModel(xml);
+    assertEquals(List.of("A", "B"), model.context.sets);
+    assertEquals(2, model.variables.size());
+    assertEquals(List.of("outer", "inner", "event3"), model.events.stream().map(e -> e.name).toList());
+    assertEquals(2, model.events.get(0).guards.size());
+  }
+
+  @Test
+  void matchesDomParserOnDeeplyNestedMatches(@TempDir Path dir) throws Exception {
+    Path xml = dir.resolve("Deep.xml");
+    Files.writeString(xml, """
+        <Pattern name="Deep">
+          <Invariants>
+            <Invariant>a<Invariant>b<Invariant expression="c">ignored</Invariant>d</Invariant>e</Invariant>
+          </Invariants>
+          <Events>
+            <Event>
+              <Parameters><Param name="x"><Param/></Param></Parameters>
+              <Guards>
+                <Guard>g1<Event name="inGuards"><Guards><Guard>g2</Guard></Guards></Event>g3</Guard>
+              </Guards>
+              <Actions>
+                <Action var="x">1<Action var="y">2</Action></Action>
+                <Action><!-- comment -->skip</Action>
+              </Actions>
+              <Event><Event><Actions><Action var="z" value="3"/></Actions></Event></Event>
+            </Event>
+          </Events>
+        </Pattern>
+        """);
+    PatternModel model = assertSameModel(xml);
+    assertEquals(List.of("abignoredde", "bignoredd", "c"),
+        model.invariants.stream().map(i -> i.expression).toList());
+    assertEquals(List.of("event1", "inGuards", "event3", "event4"),
+        model.events.stream().map(e -> e.name).toList());
+  }
+
+  @Test
+  void rejectsExternalEntities(@TempDir Path dir) throws Exception {
+    Path secret = Files.writeString(dir.resolve("secret.txt"), "SECRET");
+    Path xml = dir.resolve("Entity.xml");
+    Files.writeString(xml, "<!DOCTYPE Pattern [<!ENTITY x SYSTEM \"" + secret.toUri() + "\">]>"
+        + "<Pattern name=\"P\"><Invariants><Invariant>&x;</Invariant></Invariants></Pattern>");
+    assertThrows(Exception.class, () -> stax.parse(xml));
+  }
+
+  private PatternModel assertSameModel(Path xml) throws Exception {
+    PatternModel expected = dom.parse(xml);
+    PatternModel actual = stax.parse(xml);
+    assertArrayEquals(encoded(expected), encoded(actual), () -> "StAX and DOM models differ for " + xml);
+    return actual;
+  }
+
+  /** Canonical byte form of a model, for whole-model comparisons. */
+  static byte[] encoded(PatternModel model) throws Exception {
+    return PatternSnapshot.encode(model, 0, 0, new byte[32]);
+  }
+}
@@ -0,0 +1,110 @@
+package app;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+class PatternWatcherTest {
+
+  private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+  private final PrintStream log = new PrintStream(output, true, StandardCharsets.UTF_8);
+  private PatternWatcher watcher;
+  private Thread thread;
+
+  @AfterEach
+  void stop() throws Exception {
+    if (watcher != null) watcher.close();
+    if (thread != null) thread.join(5000);
+  }
+
+  @Test
+  void regeneratesTheProjectOfAChangedPattern(@TempDir Path workspace, @TempDir Path inputs)
+      throws Exception {
+    Path pattern = Files.copy(Path.of("node_Structure", "PSend.xml"), inputs.resolve("PSend.xml"));
+    start(workspace, pattern);
+
+    Files.writeString(pattern, "<!-- edited -->\n", StandardOpenOption.APPEND);
+
+    awaitLog("Regenerated P ");
+  }
+
+  @Test
+  void regeneratesEveryJobWhenEventsOverflow(@TempDir Path workspace, @TempDir Path inputs)
+      throws Exception {
+    Path pattern = Files.copy(Path.of("node_Structure", "PSend.xml"), inputs.resolve("PSend.xml"));
+    watcher = new PatternWatcher(service(workspace), List.of(new BatchGenerator.Job("P", List.of(pattern))),
+        PatternWatcher.DEFAULT_DEBOUNCE_MILLIS, log);
+
+    // More unrelated events than a watch key queues, so the pattern's own event is dropped.
+    for (int i = 0; i < 1000; i++) Files.createFile(inputs.resolve("noise" + i));
+    Files.writeString(pattern, "<!-- edited -->\n", StandardOpenOption.APPEND);
+    Thread.sleep(500);
+    run();
+
+    awaitLog("Regenerated P ");
+  }
+
+  @Test
+  void watchesARecreatedDirectoryAgain(@TempDir Path workspace, @TempDir Path root) throws Exception {
+    Path inputs = Files.createDirectory(root.resolve("inputs"));
+    Path pattern = Files.copy(Path.of("node_Structure", "PSend.xml"), inputs.resolve("PSend.xml"));
+    start(workspace, pattern);
+
+    try (Stream<Path> files = Files.list(inputs)) {
+      for (Path file : files.toList()) Files.delete(file);
+    }
+    Files.delete(inputs);
+    awaitLog("was moved or removed");
+
+    Files.createDirectory(inputs);
+    Files.copy(Path.of("node_Structure", "PSend.xml"), pattern);
+    awaitLog("Regenerated P ");
+    output.reset();
+
+    Files.writeString(pattern, "<!-- edited -->\n", StandardOpenOption.APPEND);
+    awaitLog("Regenerated P ");
+  }
+
+  private void start(Path workspace, Path pattern) throws Exception {
+    watcher = new PatternWatcher(service(workspace), List.of(new BatchGenerator.Job("P", List.of(pattern))),
+        PatternWatcher.DEFAULT_DEBOUNCE_MILLIS, log);
+    run();
+  }
+
+  private void run() {
+    thread = new Thread(() -> {
+      try {
+        watcher.run();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    });
+    thread.start();
+  }
+
+  private void awaitLog(String text) throws InterruptedException {
+    long deadline = System.nanoTime() + 10_000_000_000L;
+    while (System.nanoTime() < deadline) {
+      if (output.toString(StandardCharsets.UTF_8).contains(text)) return;
+      Thread.sleep(20);
+    }
+    fail("log never contained '" + text + "': " + output.toString(StandardCharsets.UTF_8));
+  }
+
+  private static GenerationService service(Path workspace) {
+    return new GenerationService(new PatternDomParser(), new EventBMapper(), new EventBWriter(),
+        new RodinProjectService(workspace));
+  }
+}
@@ -0,0 +1,343 @@
+package app;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WebServerTest {
+
+  @TempDir
+  static Path workspace;
+  @TempDir
+  static Path persistedWorkspace;
+
+  private static final HttpClient CLIENT = HttpClient.newHttpClient();
+  private static int port;
+  private static int persistingPort;
+
+  @BeforeAll
+  static void startServers() throws Exception {
+    port = startServer(workspace, false);
+    persistingPort = startServer(persistedWorkspace, true);
+  }
+
+  private static int startServer(Path workspace, boolean persist) throws Exception {
+    // Permits are released after the response is sent, so back-to-back requests need spares.
+    return startServer(service(workspace), persist, new WebServer.Limits(false, 16, 8, 1));
+  }
+
+  private static int startServer(GenerationService service, boolean persist, WebServer.Limits limits)
+      throws Exception {
+    int port;
+    try (ServerSocket socket = new ServerSocket(0)) {
+      port = socket.getLocalPort();
+    }
+    new WebServer(Path.of("").toAbsolutePath(), service, persist, limits).start(port);
+    return port;
+  }
+
+  private static GenerationService service(Path workspace) {
+    return new GenerationService(new PatternDomParser(), new EventBMapper(),
+        new EventBWriter(), new RodinProjectService(workspace));
+  }
+
+  @Test
+  void answersInvalidJsonWith400() throws Exception {
+    String refinements = "\"refinements\": [[\"PSend.xml\"]]";
+    for (String body : new String[] {"{" + refinements, "{" + refinements + "} x",
+        "{" + refinements + ", \"x\": tru}", "{\"projectName\": nul1, " + refinements + "}"}) {
+      assertEquals(400, post("/api/preview", body).statusCode(), body);
+      assertEquals(400, post("/api/generate", body).statusCode(), body);
+    }
+    assertEquals(200, post("/api/preview", "{" + refinements + ", \"x\": -1.5e3}").statusCode());
+  }
+
+  @Test
+  void rejectsDeepNestingAndOversizedBodies() throws Exception {
+    String deep = "{\"refinements\": [[\"PSend.xml\"]], \"x\": " + "[".repeat(100_000) + "]".repeat(100_000) + "}";
+    assertEquals(400, post("/api/preview", deep).statusCode());
+
+    String padding = " ".repeat(WebServer.MAX_REQUEST_BYTES);
+    assertEquals(413, post("/api/preview", "{\"refinements\": [[\"PSend.xml\"]]}" + padding).statusCode());
+    // The server still answers afterwards.
+    assertEquals(200, post("/api/preview", "{\"refinements\": [[\"PSend.xml\"]]}").statusCode());
+  }
+
+  @Test
+  void keepsConcurrentRefinementsInRequestOrder() throws Exception {
+    String[] patterns = {"PSend", "PPacket", "PNDBuffer", "PReceive", "PDestBuffer", "PActivate", "PSensingUnit"};
+    List<List<Path>> refinements = new ArrayList<>();
+    StringBuilder body = new StringBuilder("{\"refinements\": [");
+    for (int i = 0; i < 20; i++) {
+      // Refinements of different sizes, so they finish out of order.
+      List<Path> paths = new ArrayList<>();
+      body.append(i == 0 ? "[" : ", [");
+      for (int j = 0; j <= i % patterns.length; j++) {
+        String file = patterns[(i + j) % patterns.length] + ".xml";
+        paths.add(Path.of("node_Structure", file).toAbsolutePath());
+        body.append(j == 0 ? "" : ", ").append('"').append(file).append('"');
+      }
+      body.append(']');
+      refinements.add(paths);
+    }
+    body.append("]}");
+
+    HttpResponse<String> response = post("/api/preview", body.toString());
+    assertEquals(200, response.statusCode(), response::body);
+
+    GenerationService sequential = service(workspace);
+    JsonReader json = new JsonReader(new StringReader(response.body()));
+    json.beginObject();
+    json.nextName();
+    json.beginArray();
+    for (int i = 0; i < refinements.size(); i++) {
+      EventBIR expected = sequential.compose(refinements.get(i), i + 1);
+      json.beginObject();
+      while (json.hasNext()) {
+        switch (json.nextName()) {
+          case "machineName" -> assertEquals(expected.machName(), json.nextString());
+          case "context" -> assertEquals(expected.ctxText(), json.nextString());
+          case "machine" -> assertEquals(expected.machineText(), json.nextString());
+          default -> json.skipValue();
+        }
+      }
+      json.endObject();
+    }
+    json.endArray();
+  }
+
+  @Test
+  void streamsTheArtifactsInTheWorkspaceLayout() throws Exception {
+    String body = "{\"projectName\": \"Demo\", \"refinements\": [[\"PSend.xml\"], [\"PSend.xml\", \"PPacket.xml\"]]}";
+    HttpResponse<byte[]> response = CLIENT.send(request(port, "/api/generate", body),
+        HttpResponse.BodyHandlers.ofByteArray());
+    assertEquals(200, response.statusCode());
+    assertEquals("application/zip", response.headers().firstValue("Content-Type").orElse(null));
+    assertNull(response.headers().firstValue("X-Project-Path").orElse(null));
+
+    GenerationService sequential = service(workspace);
+    EventBIR first = sequential.compose(List.of(Path.of("node_Structure", "PSend.xml")), 1);
+    EventBIR second = sequential.compose(
+        List.of(Path.of("node_Structure", "PSend.xml"), Path.of("node_Structure", "PPacket.xml")), 2);
+    Map<String, String> expected = new LinkedHashMap<>();
+    expected.put("Demo/", "");
+    expected.put("Demo/Demo/", "");
+    expected.put("Demo/Demo/machine1/", "");
+    expected.put("Demo/Demo/machine1/" + first.ctxName() + ".ctx", first.ctxText());
+    expected.put("Demo/Demo/machine1/" + first.machName() + ".bcm", first.machineText());
+    expected.put("Demo/Demo/machine2/", "");
+    expected.put("Demo/Demo/machine2/" + second.ctxName() + ".ctx", second.ctxText());
+    expected.put("Demo/Demo/machine2/" + second.machName() + ".bcm", second.machineText());
+
+    assertEquals(expected, unzip(response.body()));
+  }
+
+  @Test
+  void writesTheProjectBeforeAdvertisingIt() throws Exception {
+    String body = "{\"projectName\": \"Saved\", \"refinements\": [[\"PSend.xml\"], [\"PReceive.xml\"]]}";
+    HttpResponse<byte[]> response = CLIENT.send(request(persistingPort, "/api/generate", body),
+        HttpResponse.BodyHandlers.ofByteArray());
+    assertEquals(200, response.statusCode());
+    assertEquals("Saved", response.headers().firstValue("X-Project-Name").orElse(null));
+
+    Map<String, String> entries = unzip(response.body());
+    String[] files = response.headers().firstValue("X-Generated-Files").orElseThrow().split(";");
+    assertEquals(4, files.length);
+    for (String file : files) {
+      // Checked as soon as the response arrives: the files must already be complete.
+      assertEquals(entries.get("Saved/" + file), Files.readString(persistedWorkspace.resolve(file)), file);
+    }
+  }
+
+  @Test
+  void previewLeavesTheWorkspaceUntouched(@TempDir Path previewWorkspace) throws Exception {
+    int previewPort = startServer(previewWorkspace, true);
+    String body = "{\"refinements\": [[\"PSend.xml\", \"PPacket.xml\"]]}";
+
+    HttpResponse<String> response = CLIENT.send(request(previewPort, "/api/preview", body),
+        HttpResponse.BodyHandlers.ofString());
+
+    assertEquals(200, response.statusCode());
+    assertTrue(response.body().contains("\"machine\":\"machine "), response::body);
+    try (var files = Files.walk(previewWorkspace)) {
+      assertEquals(List.of(previewWorkspace), files.toList());
+    }
+  }
+
+  @Test
+  void rejectsGenerationsBeyondThePermitsWith429() throws Exception {
+    CountDownLatch composing = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    GenerationService blocking = new GenerationService(new PatternDomParser(), new EventBMapper(),
+        new EventBWriter(), new RodinProjectService(workspace)) {
+      @Override
+      public EventBIR compose(List<Path> patternXmls, int refinement) throws Exception {
+        composing.countDown();
+        release.await();
+        return super.compose(patternXmls, refinement);
+      }
+    };
+    int limitedPort = startServer(blocking, false, new WebServer.Limits(false, 8, 1, 7));
+    String body = "{\"refinements\": [[\"PSend.xml\"]]}";
+
+    CompletableFuture<HttpResponse<String>> first = CLIENT.sendAsync(
+        request(limitedPort, "/api/preview", body), HttpResponse.BodyHandlers.ofString());
+    assertTrue(composing.await(10, TimeUnit.SECONDS));
+    try {
+      for (String path : new String[] {"/api/preview", "/api/generate"}) {
+        HttpResponse<String> rejected = CLIENT.send(request(limitedPort, path, body),
+            HttpResponse.BodyHandlers.ofString());
+        assertEquals(429, rejected.statusCode(), path);
+        assertEquals("7", rejected.headers().firstValue("Retry-After").orElse(null), path);
+      }
+      // Wrong methods are answered without waiting for a permit.
+      HttpResponse<String> get = CLIENT.send(
+          HttpRequest.newBuilder(URI.create("http://localhost:" + limitedPort + "/api/generate")).GET().build(),
+          HttpResponse.BodyHandlers.ofString());
+      assertEquals(405, get.statusCode());
+      assertNull(get.headers().firstValue("Retry-After").orElse(null));
+    } finally {
+      release.countDown();
+    }
+    assertEquals(200, first.get(10, TimeUnit.SECONDS).statusCode());
+    assertEquals(200, CLIENT.send(request(limitedPort, "/api/preview", body),
+        HttpResponse.BodyHandlers.ofString()).statusCode());
+  }
+
+  @Test
+  void servesStaticAssetsWithETagsGzipAndHead() throws Exception {
+    HttpResponse<byte[]> plain = get("/static/app.js", Map.of());
+    assertEquals(200, plain.statusCode());
+    assertNull(plain.headers().firstValue("Content-Encoding").orElse(null));
+    assertEquals("no-cache", plain.headers().firstValue("Cache-Control").orElse(null));
+    String etag = plain.headers().firstValue("ETag").orElseThrow();
+
+    HttpResponse<byte[]> gzipped = get("/static/app.js", Map.of("Accept-Encoding", "br, gzip;q=0.8"));
+    assertEquals("gzip", gzipped.headers().firstValue("Content-Encoding").orElse(null));
+    String gzipEtag = gzipped.headers().firstValue("ETag").orElseThrow();
+    assertNotEquals(etag, gzipEtag);
+    try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(gzipped.body()))) {
+      assertArrayEquals(plain.body(), in.readAllBytes());
+    }
+    assertNull(get("/static/app.js", Map.of("Accept-Encoding", "gzip;q=0"))
+        .headers().firstValue("Content-Encoding").orElse(null));
+
+    assertEquals(304, get("/static/app.js", Map.of("If-None-Match", etag)).statusCode());
+    assertEquals(304, get("/static/app.js", Map.of("If-None-Match", "\"other\", W/" + etag)).statusCode());
+    assertEquals(304, get("/static/app.js", Map.of("If-None-Match", gzipEtag, "Accept-Encoding", "gzip"))
+        .statusCode());
+    // The identity ETag does not validate the gzip variant.
+    assertEquals(200, get("/static/app.js", Map.of("If-None-Match", etag, "Accept-Encoding", "gzip"))
+        .statusCode());
+
+    HttpResponse<byte[]> head = CLIENT.send(
+        HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/static/app.js"))
+            .method("HEAD", HttpRequest.BodyPublishers.noBody()).build(),
+        HttpResponse.BodyHandlers.ofByteArray());
+    assertEquals(200, head.statusCode());
+    assertEquals(etag, head.headers().firstValue("ETag").orElse(null));
+    assertEquals(plain.body().length, head.headers().firstValueAsLong("Content-Length").orElse(-1));
+    assertEquals(0, head.body().length);
+  }
+
+  @Test
+  void exposesMetricsInPrometheusTextFormat() throws Exception {
+    assertEquals(200, post("/api/preview", "{\"refinements\": [[\"PSend.xml\"]]}").statusCode());
+
+    HttpResponse<byte[]> response = get("/metrics", Map.of());
+    assertEquals(200, response.statusCode());
+    assertEquals("text/plain; version=0.0.4; charset=utf-8", response.headers().firstValue("Content-Type").orElse(null));
+
+    Pattern sample = Pattern.compile(
+        "([a-zA-Z_:][a-zA-Z0-9_:]*)(\\{([a-zA-Z_]\\w*=\"[^\"]*\"(,[a-zA-Z_]\\w*=\"[^\"]*\")*)?})? (NaN|-?[0-9.]+(E-?[0-9]+)?)");
+    Map<String, String> types = new HashMap<>();
+    Map<String, Long> buckets = new HashMap<>();
+    Map<String, Double> values = new HashMap<>();
+    for (String line : new String(response.body(), StandardCharsets.UTF_8).split("\n")) {
+      if (line.startsWith("# HELP ")) continue;
+      if (line.startsWith("# TYPE ")) {
+        String[] parts = line.split(" ");
+        assertNull(types.put(parts[2], parts[3]), () -> "family declared twice: " + line);
+        continue;
+      }
+      Matcher m = sample.matcher(line);
+      assertTrue(m.matches(), () -> "not a sample line: " + line);
+      String name = m.group(1);
+      String family = name.replaceFirst("_(bucket|sum|count)$", "");
+      String type = types.containsKey(name) ? types.get(name) : types.get(family);
+      assertTrue(type != null, () -> "sample before its TYPE line: " + line);
+      String labels = m.group(3) == null ? "" : m.group(3);
+      values.put(name + "{" + labels + "}", Double.parseDouble(m.group(5)));
+      if (name.endsWith("_bucket")) {
+        // Buckets are cumulative; the last (+Inf) one must equal the histogram's _count.
+        String series = family + "{" + labels.replaceFirst(",?le=\"[^\"]*\"$", "") + "}";
+        long count = Long.parseLong(m.group(5));
+        Long previous = buckets.put(series, count);
+        assertTrue(previous == null || previous <= count, () -> "buckets decrease at " + line);
+      } else if (name.endsWith("_count") && "histogram".equals(types.get(family))) {
+        assertEquals(buckets.get(family + "{" + labels + "}"), Long.valueOf(m.group(5)), line);
+      }
+    }
+    assertEquals("histogram", types.get("eventb_stage_duration_seconds"));
+    assertEquals("counter", types.get("eventb_http_requests_total"));
+    assertEquals("gauge", types.get("eventb_generations_in_flight"));
+    assertTrue(values.get("eventb_http_requests_total{route=\"/api/preview\",code=\"2xx\"}") >= 1, values::toString);
+    assertTrue(values.get("eventb_stage_duration_seconds_count{stage=\"map\"}") >= 1, values::toString);
+  }
+
+  private static HttpResponse<byte[]> get(String path, Map<String, String> headers) throws Exception {
+    HttpRequest.Builder request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + path)).GET();
+    headers.forEach(request::header);
+    return CLIENT.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+  }
+
+  private static Map<String, String> unzip(byte[] zip) throws Exception {
+    Map<String, String> entries = new LinkedHashMap<>();
+    try (ZipInputStream in = new ZipInputStream(new ByteArrayInputStream(zip), StandardCharsets.UTF_8)) {
+      for (ZipEntry entry; (entry = in.getNextEntry()) != null; ) {
+        entries.put(entry.getName(), new String(in.readAllBytes(), StandardCharsets.UTF_8));
+      }
+    }
+    return entries;
+  }
+
+  private static HttpResponse<String> post(String path, String body) throws Exception {
+    return CLIENT.send(request(port, path, body), HttpResponse.BodyHandlers.ofString());
+  }
+
+  private static HttpRequest request(int port, String path, String body) {
+    return HttpRequest.newBuilder(URI.create("http://localhost:" + port + path))
+        .POST(HttpRequest.BodyPublishers.ofString(body))
+        .build();
+  }
+}